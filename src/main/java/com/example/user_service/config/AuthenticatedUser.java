@@ -0,0 +1,28 @@
+package com.example.user_service.config;
+
+import com.example.user_service.models.RoleType;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+
+// Compact login projection, loaded with one query and handed back as the authentication principal.
+// It does not implement CredentialsContainer, so erasing credentials never touches the cached instance.
+public record AuthenticatedUser(Long id, String email, String password, RoleType role, boolean verified) implements UserDetails {
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return AuthorityUtils.createAuthorityList("ROLE_" + role);
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+}
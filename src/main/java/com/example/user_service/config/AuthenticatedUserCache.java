@@ -0,0 +1,39 @@
+package com.example.user_service.config;
+
+import com.example.user_service.utils.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import static com.example.user_service.utils.TransactionUtils.afterCommit;
+
+// Short lived cache of login projections keyed by email, every write to a user must evict it.
+// The eviction happens after commit, otherwise a login between the eviction and the commit caches the old row again.
+@Component
+public class AuthenticatedUserCache {
+
+    private final BoundedCache<String, AuthenticatedUser> entries;
+
+    private final long ttlMillis;
+
+    public AuthenticatedUserCache(@Value("${auth.cache.max-size:10000}") int maxSize,
+                                  @Value("${auth.cache.ttl:60000}") long ttlMillis) {
+        this.entries = new BoundedCache<>(maxSize);
+        this.ttlMillis = ttlMillis;
+    }
+
+    public AuthenticatedUser get(String email) {
+        return entries.get(email);
+    }
+
+    public void put(AuthenticatedUser user) {
+        entries.put(user.email(), user, System.currentTimeMillis() + ttlMillis);
+    }
+
+    public void evict(String email) {
+        afterCommit(() -> entries.remove(email));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
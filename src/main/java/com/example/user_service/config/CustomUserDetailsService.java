@@ -1,10 +1,7 @@
 package com.example.user_service.config;
 
-import com.example.user_service.models.UserEntity;
 import com.example.user_service.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.authority.AuthorityUtils;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -16,11 +13,19 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private AuthenticatedUserCache authenticatedUserCache;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        UserEntity userEntity = userRepository.findByEmail(username)
+        AuthenticatedUser cached = authenticatedUserCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
+        AuthenticatedUser user = userRepository.findAuthenticatedUserByEmail(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
-        System.out.println(username);
-        return new User(userEntity.getEmail(), userEntity.getPassword(), AuthorityUtils.createAuthorityList("USER"));
+        authenticatedUserCache.put(user);
+        return user;
     }
 }
@@ -0,0 +1,107 @@
+package com.example.user_service.config;
+
+import com.example.user_service.exceptions.ExceptionHandlers;
+import com.example.user_service.services.TokenRevocationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+// Verifies the bearer token once per request and stores a JwtPrincipal in the security context.
+// A present but invalid token is answered with 401 here, before any controller work runs.
+// Requests without a token continue unauthenticated and the authorization rules decide.
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtUtils jwtUtils;
+    private final TokenRevocationService tokenRevocationService;
+    // Matched like the permitAll rules of SecurityConfig, whatever the servlet mapping
+    private final RequestMatcher publicPaths;
+    // Serialized once, rejecting a token only writes these bytes
+    private final byte[] invalidTokenBody;
+
+    public JwtAuthenticationFilter(JwtUtils jwtUtils, TokenRevocationService tokenRevocationService,
+                                   List<String> publicPaths, ObjectMapper objectMapper) {
+        this.jwtUtils = jwtUtils;
+        this.tokenRevocationService = tokenRevocationService;
+        this.publicPaths = new OrRequestMatcher(publicPaths.stream()
+                .map(AntPathRequestMatcher::antMatcher)
+                .toArray(RequestMatcher[]::new));
+        this.invalidTokenBody = ExceptionHandlers.errorBody(objectMapper, HttpStatus.UNAUTHORIZED, "Unauthorized: invalid or expired token.");
+    }
+
+    // Public endpoints never look at the header, so a stale token cannot block a login
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return publicPaths.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        JwtPrincipal principal;
+        try {
+            principal = toPrincipal(header);
+        } catch (JwtException | IllegalArgumentException e) {
+            reject(response);
+            return;
+        }
+
+        UsernamePasswordAuthenticationToken authentication = UsernamePasswordAuthenticationToken.authenticated(
+                principal, null, AuthorityUtils.createAuthorityList("ROLE_" + principal.role()));
+
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(authentication);
+        SecurityContextHolder.setContext(context);
+
+        filterChain.doFilter(request, response);
+    }
+
+    private JwtPrincipal toPrincipal(String header) {
+        if (!header.startsWith(BEARER_PREFIX)) {
+            throw new IllegalArgumentException("The Authorization header is not a bearer token.");
+        }
+
+        Claims claims = jwtUtils.parseClaims(header.substring(BEARER_PREFIX.length()));
+        String id = claims.get("id", String.class);
+        String role = claims.get("role", String.class);
+        if (id == null || role == null) {
+            throw new IllegalArgumentException("The token has no id or role.");
+        }
+        // Checked on every request, a cached signature check must not outlive a logout.
+        // Tokens without a jti cannot be revoked, so they are not accepted either.
+        if (claims.getId() == null || tokenRevocationService.isRevoked(claims.getId())) {
+            throw new IllegalArgumentException("The token was revoked.");
+        }
+        return new JwtPrincipal(Long.valueOf(id), claims.getSubject(), role);
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+        ExceptionHandlers.writeErrorBody(response, HttpStatus.UNAUTHORIZED, invalidTokenBody);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.user_service.config;
+
+import com.example.user_service.utils.BoundedCache;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.example.user_service.utils.TokenUtils.sha256Hex;
+
+// Bounded cache of already verified claims, keyed by the SHA-256 digest of the token.
+// When it is full the least recently used entry makes room, so a miss never scans the cache.
+@Component
+public class JwtClaimsCache {
+
+    private final BoundedCache<String, Claims> entries;
+
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public JwtClaimsCache(@Value("${jwt.cache.max-size:10000}") int maxSize,
+                          @Value("${jwt.cache.ttl:300000}") long ttlMillis) {
+        this.entries = new BoundedCache<>(maxSize);
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Returns the cached claims, or null if the token was never verified or its entry has expired
+    public Claims get(String token) {
+        Claims claims = entries.get(sha256Hex(token));
+        if (claims == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return claims;
+    }
+
+    // Only call with claims that were just verified, the entry never outlives the token expiration
+    public void put(String token, Claims claims) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttlMillis;
+        Date tokenExpiration = claims.getExpiration();
+        if (tokenExpiration != null) {
+            expiresAt = Math.min(expiresAt, tokenExpiration.getTime());
+        }
+        if (expiresAt <= now) {
+            return;
+        }
+
+        entries.put(sha256Hex(token), claims, expiresAt);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
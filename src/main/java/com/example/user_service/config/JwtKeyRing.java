@@ -0,0 +1,195 @@
+package com.example.user_service.config;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.PublicJwk;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.*;
+import java.security.cert.Certificate;
+import java.time.Instant;
+import java.util.*;
+
+import static com.example.user_service.utils.TokenUtils.sha256Hex;
+
+// Asymmetric signing keys, used instead of the jwt.secret HMAC key when jwt.signing.algorithm is RS256 or Ed25519.
+// The private key of the active entry signs, every public key is published in the JWKS so peer services verify
+// tokens on their own. Without a keystore the keys are generated in memory and rotated on a schedule: the next key
+// is published one rotation before it signs anything, and a retired key stays published while its tokens live.
+// With several instances, or to keep tokens valid across restarts, point jwt.signing.keystore to a shared PKCS12
+// file instead. Every key entry is published with its alias as kid, and the file is read again on every rotation.
+@Component
+public class JwtKeyRing {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyRing.class);
+
+    private final String algorithm;
+    private final long tokenLifetimeMillis;
+    private final String keystoreLocation;
+    private final char[] keystorePassword;
+    private final String activeKid;
+
+    // Replaced as a whole on rotation, so readers never see a half rotated ring
+    private volatile Ring ring;
+
+    public JwtKeyRing(@Value("${jwt.signing.algorithm:HS256}") String algorithm,
+                      @Value("${jwt.expiration}") long tokenLifetimeMillis,
+                      @Value("${jwt.signing.keystore:}") String keystoreLocation,
+                      @Value("${jwt.signing.keystore-password:}") String keystorePassword,
+                      @Value("${jwt.signing.active-kid:}") String activeKid) {
+        this.algorithm = algorithm;
+        this.tokenLifetimeMillis = tokenLifetimeMillis;
+        this.keystoreLocation = keystoreLocation;
+        this.keystorePassword = keystorePassword.toCharArray();
+        this.activeKid = activeKid;
+
+        if (!isEnabled()) {
+            this.ring = Ring.EMPTY;
+        } else if (keystoreLocation.isBlank()) {
+            this.ring = Ring.of(List.of(generate(), generate()), 0);
+        } else {
+            this.ring = loadKeystore();
+        }
+    }
+
+    public boolean isEnabled() {
+        return !algorithm.equals("HS256");
+    }
+
+    public SigningKey signingKey() {
+        return ring.active();
+    }
+
+    // Null when the kid is unknown, the token was signed by a key this ring never had or already dropped
+    public PublicKey verificationKey(String kid) {
+        return ring.publicKeys().get(kid);
+    }
+
+    public byte[] getJwks() {
+        return ring.jwks();
+    }
+
+    public String getJwksETag() {
+        return ring.etag();
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.signing.rotation-interval:604800000}", initialDelayString = "${jwt.signing.rotation-interval:604800000}")
+    public void rotate() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!keystoreLocation.isBlank()) {
+            ring = loadKeystore();
+            return;
+        }
+
+        Instant now = Instant.now();
+        Ring current = ring;
+        List<SigningKey> keys = new ArrayList<>();
+        for (SigningKey key : current.keys()) {
+            if (key == current.active()) {
+                keys.add(key.retire(now));
+            } else if (key.retiredAt() == null || key.retiredAt().plusMillis(tokenLifetimeMillis).isAfter(now)) {
+                keys.add(key);
+            }
+        }
+        // The key published last rotation starts signing, a new one is published for the next
+        SigningKey next = generate();
+        keys.add(next);
+        ring = Ring.of(keys, keys.size() - 2);
+        log.info("Rotated the JWT signing key, signing with {} and publishing {} next", ring.active().kid(), next.kid());
+    }
+
+    private SigningKey generate() {
+        KeyPair keyPair = switch (algorithm) {
+            case "RS256" -> Jwts.SIG.RS256.keyPair().build();
+            case "Ed25519" -> Jwks.CRV.Ed25519.keyPair().build();
+            default -> throw new IllegalStateException("Unsupported jwt.signing.algorithm " + algorithm + ", use HS256, RS256 or Ed25519.");
+        };
+        String kid = Jwks.builder().key(keyPair.getPublic()).idFromThumbprint().build().getId();
+        return new SigningKey(kid, keyPair.getPrivate(), keyPair.getPublic(), signatureAlgorithm(keyPair.getPublic()), null);
+    }
+
+    private Ring loadKeystore() {
+        try (InputStream input = Files.newInputStream(Path.of(keystoreLocation))) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(input, keystorePassword);
+
+            List<SigningKey> keys = new ArrayList<>();
+            for (String alias : Collections.list(keyStore.aliases())) {
+                if (!keyStore.isKeyEntry(alias)) {
+                    continue;
+                }
+                Certificate certificate = keyStore.getCertificate(alias);
+                PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, keystorePassword);
+                keys.add(new SigningKey(alias, privateKey, certificate.getPublicKey(), signatureAlgorithm(certificate.getPublicKey()), null));
+            }
+            if (keys.isEmpty()) {
+                throw new IllegalStateException("The keystore " + keystoreLocation + " has no key entries.");
+            }
+
+            // Without an explicit kid the last alias signs, date based aliases make that the newest key
+            keys.sort(Comparator.comparing(SigningKey::kid));
+            int active = keys.size() - 1;
+            if (!activeKid.isBlank()) {
+                active = keys.stream().map(SigningKey::kid).toList().indexOf(activeKid);
+                if (active < 0) {
+                    throw new IllegalStateException("The keystore " + keystoreLocation + " has no key " + activeKid + ".");
+                }
+            }
+            return Ring.of(keys, active);
+
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("The JWT keystore " + keystoreLocation + " could not be read.", e);
+        }
+    }
+
+    private static SignatureAlgorithm signatureAlgorithm(PublicKey publicKey) {
+        return switch (publicKey.getAlgorithm()) {
+            case "RSA" -> Jwts.SIG.RS256;
+            case "EdDSA", "Ed25519" -> Jwts.SIG.EdDSA;
+            default -> throw new IllegalStateException("Unsupported JWT signing key type " + publicKey.getAlgorithm() + ".");
+        };
+    }
+
+    public record SigningKey(String kid, PrivateKey privateKey, PublicKey publicKey, SignatureAlgorithm algorithm, Instant retiredAt) {
+
+        SigningKey retire(Instant now) {
+            return new SigningKey(kid, privateKey, publicKey, algorithm, now);
+        }
+    }
+
+    // The JWKS document and its ETag are built once per rotation, serving them only copies a reference
+    private record Ring(List<SigningKey> keys, SigningKey active, Map<String, PublicKey> publicKeys, byte[] jwks, String etag) {
+
+        static final Ring EMPTY = of(List.of(), -1);
+
+        static Ring of(List<SigningKey> keys, int active) {
+            Map<String, PublicKey> publicKeys = new HashMap<>();
+            StringJoiner jwks = new StringJoiner(",", "{\"keys\":[", "]}");
+            for (SigningKey key : keys) {
+                publicKeys.put(key.kid(), key.publicKey());
+                PublicJwk<?> jwk = Jwks.builder().key(key.publicKey())
+                        .id(key.kid())
+                        .algorithm(key.algorithm().getId())
+                        .publicKeyUse("sig")
+                        .build();
+                jwks.add(Jwks.json(jwk));
+            }
+
+            byte[] body = jwks.toString().getBytes(StandardCharsets.UTF_8);
+            String etag = "\"" + sha256Hex(jwks.toString()).substring(0, 32) + "\"";
+            return new Ring(List.copyOf(keys), active < 0 ? null : keys.get(active), Map.copyOf(publicKeys), body, etag);
+        }
+    }
+}
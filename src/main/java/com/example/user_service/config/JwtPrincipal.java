@@ -0,0 +1,5 @@
+package com.example.user_service.config;
+
+// Principal built from a verified access token, requests are authorized from it without loading the user
+public record JwtPrincipal(Long id, String email, String role) {
+}
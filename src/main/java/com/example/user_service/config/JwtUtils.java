@@ -2,45 +2,113 @@ package com.example.user_service.config;
 
 import com.example.user_service.models.RoleType;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.security.Key;
+import java.security.PublicKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 @Component
 public class JwtUtils {
 
     private final SecretKey secretKey;
 
+    private final JwtKeyRing keyRing;
+
+    // The parser is immutable and thread safe, so it is built once and shared by every request
+    private final JwtParser jwtParser;
+
+    private final JwtClaimsCache claimsCache;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer signTimer;
+    private final Timer parseTimer;
+
     @Value("${jwt.expiration}")
     private long expiration;
 
-    public JwtUtils(@Value("${jwt.secret}") String secret) {
+    public JwtUtils(@Value("${jwt.secret}") String secret,
+                    @Value("${jwt.signing.accept-hmac:true}") boolean acceptHmac,
+                    JwtKeyRing keyRing, JwtClaimsCache claimsCache, MeterRegistry meterRegistry) {
         this.secretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        this.keyRing = keyRing;
+        this.jwtParser = keyRing.isEnabled()
+                ? Jwts.parser().keyLocator(new KeyRingLocator(keyRing, acceptHmac ? secretKey : null)).build()
+                : Jwts.parser().verifyWith(secretKey).build();
+        this.claimsCache = claimsCache;
+        this.meterRegistry = meterRegistry;
+        this.signTimer = Timer.builder("jwt.sign")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        // Only cache misses are timed, a hit skips the signature check entirely
+        this.parseTimer = Timer.builder("jwt.parse")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        FunctionCounter.builder("jwt.cache.requests", claimsCache, JwtClaimsCache::getHits)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("jwt.cache.requests", claimsCache, JwtClaimsCache::getMisses)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("jwt.cache.evictions", claimsCache, JwtClaimsCache::getEvictions)
+                .description("Entries dropped because they expired or the cache was full")
+                .register(meterRegistry);
     }
 
-    public String generateToken(String username, Map<String, String> claims) {
-        return Jwts.builder()
-                .subject(username)
-                .claims(claims)
-                .issuedAt(new Date())
-                .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(secretKey)
-                .compact();
+    public String generateToken(String username, Map<String, String> claims, String jti) {
+        return signTimer.record(() -> {
+            JwtBuilder builder = Jwts.builder()
+                    .id(jti)
+                    .subject(username)
+                    .claims(claims)
+                    .issuedAt(new Date())
+                    .expiration(new Date(System.currentTimeMillis() + expiration));
+
+            if (keyRing.isEnabled()) {
+                JwtKeyRing.SigningKey signingKey = keyRing.signingKey();
+                builder.header().keyId(signingKey.kid()).and()
+                        .signWith(signingKey.privateKey(), signingKey.algorithm());
+            } else {
+                builder.signWith(secretKey);
+            }
+            return builder.compact();
+        });
     }
 
     public String createToken(String username, Long id, RoleType roleType){
+        return createToken(username, id, roleType, UUID.randomUUID().toString());
+    }
+
+    // The jti is what a logout or a revoked refresh token family puts on the revocation list
+    public String createToken(String username, Long id, RoleType roleType, String jti){
         Map<String, String> claims = new HashMap<>();
         claims.put("id", id.toString());
         claims.put("email", username);
         claims.put("role", roleType.toString());
-        return generateToken(username, claims);
+        return generateToken(username, claims, jti);
+    }
+
+    // Access token lifetime in milliseconds
+    public long getExpiration() {
+        return expiration;
     }
 
     public String extractUsername(String token) {
@@ -56,19 +124,65 @@ public class JwtUtils {
     }
 
     public boolean validateToken(String token, String username) {
-        final String tokenUsername = extractUsername(token);
-        return (tokenUsername.equals(username) && !isTokenExpired(token));
+        final Claims claims = parseClaims(token);
+        return (claims.getSubject().equals(username) && !isTokenExpired(claims));
     }
 
-    private Claims parseClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    // Verifies the token signature only once per cache ttl, later calls reuse the verified claims
+    public Claims parseClaims(String token) {
+        Claims claims = claimsCache.get(token);
+        if (claims != null) {
+            return claims;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            claims = jwtParser.parseSignedClaims(token).getPayload();
+        } catch (JwtException | IllegalArgumentException e) {
+            Counter.builder("jwt.invalid")
+                    .tag("reason", e.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+            throw e;
+        } finally {
+            sample.stop(parseTimer);
+        }
+
+        claimsCache.put(token, claims);
+        return claims;
+    }
+
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
-    private boolean isTokenExpired(String token) {
-        return parseClaims(token).getExpiration().before(new Date());
+    // Picks the verification key by kid. HMAC tokens have no kid, they are only accepted while switching
+    // from HS256 so the tokens issued before keep working until they expire.
+    private static class KeyRingLocator extends LocatorAdapter<Key> {
+
+        private final JwtKeyRing keyRing;
+        private final SecretKey legacySecretKey;
+
+        KeyRingLocator(JwtKeyRing keyRing, SecretKey legacySecretKey) {
+            this.keyRing = keyRing;
+            this.legacySecretKey = legacySecretKey;
+        }
+
+        @Override
+        protected Key locate(JwsHeader header) {
+            String kid = header.getKeyId();
+            if (kid == null) {
+                if (legacySecretKey != null && header.getAlgorithm() != null && header.getAlgorithm().startsWith("HS")) {
+                    return legacySecretKey;
+                }
+                throw new UnsupportedJwtException("The token has no key id.");
+            }
+
+            PublicKey key = keyRing.verificationKey(kid);
+            if (key == null) {
+                throw new UnsupportedJwtException("Unknown signing key " + kid + ".");
+            }
+            return key;
+        }
     }
 }
@@ -0,0 +1,85 @@
+package com.example.user_service.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+// Limits login attempts per email and per client IP before the password is hashed.
+// The email buckets stop guessing against one account, the IP buckets stop one client spraying many accounts.
+@Component
+public class LoginThrottle {
+
+    private final boolean enabled;
+    private final TokenBucketThrottle emails;
+    private final TokenBucketThrottle ips;
+
+    private final Counter emailThrottled;
+    private final Counter ipThrottled;
+
+    public LoginThrottle(@Value("${auth.throttle.enabled:true}") boolean enabled,
+                         @Value("${auth.throttle.email.capacity:5}") int emailCapacity,
+                         @Value("${auth.throttle.email.refill:12000}") long emailRefillMillis,
+                         @Value("${auth.throttle.email.failures-before-backoff:5}") int emailFailures,
+                         @Value("${auth.throttle.ip.capacity:50}") int ipCapacity,
+                         @Value("${auth.throttle.ip.refill:600}") long ipRefillMillis,
+                         @Value("${auth.throttle.ip.failures-before-backoff:20}") int ipFailures,
+                         @Value("${auth.throttle.backoff.initial:1000}") long initialBackoffMillis,
+                         @Value("${auth.throttle.backoff.max:300000}") long maxBackoffMillis,
+                         @Value("${auth.throttle.max-keys:100000}") int maxKeys,
+                         @Value("${auth.throttle.idle:900000}") long idleMillis,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.emails = new TokenBucketThrottle(emailCapacity, emailRefillMillis, emailFailures,
+                initialBackoffMillis, maxBackoffMillis, maxKeys, idleMillis);
+        this.ips = new TokenBucketThrottle(ipCapacity, ipRefillMillis, ipFailures,
+                initialBackoffMillis, maxBackoffMillis, maxKeys, idleMillis);
+
+        this.emailThrottled = Counter.builder("auth.throttle.rejected").tag("key", "email").register(meterRegistry);
+        this.ipThrottled = Counter.builder("auth.throttle.rejected").tag("key", "ip").register(meterRegistry);
+        Gauge.builder("auth.throttle.keys", emails, TokenBucketThrottle::size).tag("key", "email").register(meterRegistry);
+        Gauge.builder("auth.throttle.keys", ips, TokenBucketThrottle::size).tag("key", "ip").register(meterRegistry);
+    }
+
+    // Returns 0 if the attempt may be authenticated, otherwise the milliseconds the client should wait
+    public long tryAcquire(String email, String ip) {
+        if (!enabled) {
+            return 0;
+        }
+
+        long ipWait = ips.tryAcquire(ip);
+        if (ipWait > 0) {
+            ipThrottled.increment();
+            return ipWait;
+        }
+
+        long emailWait = emails.tryAcquire(normalize(email));
+        if (emailWait > 0) {
+            emailThrottled.increment();
+            return emailWait;
+        }
+        return 0;
+    }
+
+    public void recordFailure(String email, String ip) {
+        if (enabled) {
+            ips.recordFailure(ip);
+            emails.recordFailure(normalize(email));
+        }
+    }
+
+    // Only the account streak ends, one valid credential must not clear the backoff of a client spraying others
+    public void recordSuccess(String email) {
+        if (enabled) {
+            emails.recordSuccess(normalize(email));
+        }
+    }
+
+    // Case and padding variants of one email share a bucket
+    private static String normalize(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+}
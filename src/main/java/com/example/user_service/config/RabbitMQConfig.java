@@ -9,12 +9,12 @@ import org.springframework.context.annotation.Configuration;
 public class RabbitMQConfig {
 
     private static final String EMAIL_QUEUE = "welcomeEmailQueue";
-    private static final String EMAIL_EXCHANGE = "welcomeEmailExchange";
-    private static final String EMAIL_ROUTING_KEY = "welcome.email";
+    public static final String EMAIL_EXCHANGE = "welcomeEmailExchange";
+    public static final String EMAIL_ROUTING_KEY = "welcome.email";
 
     private static final String VERIFICATION_EMAIL_QUEUE = "verificationEmailQueue";
-    private static final String VERIFICATION_EMAIL_EXCHANGE = "verificationEmailExchange";
-    private static final String VERIFICATION_EMAIL_ROUTING_KEY = "verification.email";
+    public static final String VERIFICATION_EMAIL_EXCHANGE = "verificationEmailExchange";
+    public static final String VERIFICATION_EMAIL_ROUTING_KEY = "verification.email";
 
     @Bean
     public Jackson2JsonMessageConverter messageConverter() {
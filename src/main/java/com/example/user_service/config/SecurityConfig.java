@@ -1,10 +1,18 @@
 package com.example.user_service.config;
 
+import com.example.user_service.exceptions.ExceptionHandlers;
+import com.example.user_service.services.TokenRevocationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
@@ -14,23 +22,64 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableWebSecurity
+@EnableMethodSecurity
 public class SecurityConfig {
 
+    // Reachable without a token, the JWT filter skips them entirely
+    public static final List<String> PUBLIC_PATHS = List.of(
+            "/api/auth/**",
+            "/.well-known/**",
+            "/v3/api-docs/**",
+            "/swagger-ui/**",
+            "/swagger-ui.html",
+            "/h2-console/**",
+            // Liveness probes only, metrics and the other endpoints need an admin token
+            "/actuator/health/**",
+            "/actuator/info",
+            "/error"
+    );
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Value("${password.hashing.timeout:5000}")
+    private long hashingTimeout;
+
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(); // Define the password encoder bean
+    public PasswordEncoder passwordEncoder(ThreadPoolExecutor passwordHashingExecutor, MeterRegistry meterRegistry) {
+        // BCrypt runs on the hashing bulkhead instead of the request thread
+        return new BulkheadPasswordEncoder(bcryptPasswordEncoder(), passwordHashingExecutor, hashingTimeout, meterRegistry);
+    }
+
+    // The hashing algorithm itself, also used directly by the bulk import on its own threads
+    public static PasswordEncoder bcryptPasswordEncoder() {
+        return new BCryptPasswordEncoder();
     }
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        byte[] unauthorizedBody = ExceptionHandlers.errorBody(objectMapper, HttpStatus.UNAUTHORIZED, "Unauthorized: a valid token is required.");
+        byte[] forbiddenBody = ExceptionHandlers.errorBody(objectMapper, HttpStatus.FORBIDDEN, "Forbidden: You cannot access this data.");
+
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .headers(headers ->
@@ -38,7 +87,20 @@ public class SecurityConfig {
                 )
                 .authorizeHttpRequests( authorizeRequests ->
                         authorizeRequests
-                                .anyRequest().permitAll())
+                                .requestMatchers(PUBLIC_PATHS.stream()
+                                        .map(AntPathRequestMatcher::antMatcher)
+                                        .toArray(RequestMatcher[]::new)).permitAll()
+                                // The token is only read on the original dispatch, which was already authorized
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                                .requestMatchers(AntPathRequestMatcher.antMatcher("/actuator/**")).hasRole("ADMIN")
+                                .anyRequest().authenticated())
+                // Roles are checked per method with @PreAuthorize
+                .addFilterAfter(new JwtAuthenticationFilter(jwtUtils, tokenRevocationService, PUBLIC_PATHS, objectMapper), SecurityContextHolderFilter.class)
+                .exceptionHandling(exceptionHandling -> exceptionHandling
+                        .authenticationEntryPoint((request, response, e) ->
+                                ExceptionHandlers.writeErrorBody(response, HttpStatus.UNAUTHORIZED, unauthorizedBody))
+                        .accessDeniedHandler((request, response, e) ->
+                                ExceptionHandlers.writeErrorBody(response, HttpStatus.FORBIDDEN, forbiddenBody)))
                 .formLogin(AbstractHttpConfigurer::disable)
                 .httpBasic(AbstractHttpConfigurer::disable)
                 .cors(httpSecurityCorsConfigurer -> corsConfigurationSource())
@@ -59,7 +121,8 @@ public class SecurityConfig {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(Arrays.asList("*"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE"));
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "If-None-Match", "If-Match"));
+        configuration.setExposedHeaders(Arrays.asList("ETag"));
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
         return source;
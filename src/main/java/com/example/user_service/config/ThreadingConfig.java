@@ -0,0 +1,51 @@
+package com.example.user_service.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// With spring.threads.virtual.enabled (the "virtual" profile) on Java 21+, Spring Boot already runs Tomcat requests,
+// @Scheduled jobs and the AMQP listeners on virtual threads. This adds the threads the service starts by itself.
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    // Threads that spend their time waiting on the broker, CPU bound work like hashing keeps its bounded platform pool
+    @Bean
+    public ThreadFactory amqpPublisherThreadFactory(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return new VirtualThreadTaskExecutor("amqp-batch-publisher-").getVirtualThreadFactory();
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "amqp-batch-publisher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void logThreadingMode(ApplicationReadyEvent event) {
+        if (Threading.VIRTUAL.isActive(event.getApplicationContext().getEnvironment())) {
+            log.info("Request handling, scheduled jobs and AMQP publishing run on virtual threads");
+        } else if (virtualThreadsEnabled) {
+            log.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads, using platform threads",
+                    Runtime.version().feature());
+        }
+    }
+}
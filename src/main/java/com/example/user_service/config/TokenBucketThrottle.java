@@ -0,0 +1,154 @@
+package com.example.user_service.config;
+
+import com.example.user_service.utils.BoundedCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+// Token buckets keyed by a string, plus a backoff that grows with consecutive failures of the same key.
+// Every bucket is an immutable state swapped with compare-and-set, so concurrent attempts never block each other.
+// When the table is full a key without recent failures makes room, least recently used first, losing at most a
+// partly drained bucket. A key with a failure streak or in backoff is kept until it has been idle long enough to be
+// full again and out of any backoff. If only such keys are left a new key is throttled, so a flood of new keys
+// cannot reset the backoff of others.
+class TokenBucketThrottle {
+
+    private final BoundedCache<String, AtomicReference<State>> buckets;
+
+    // Times are nanoseconds since the throttle was created, so they never go negative
+    private final LongSupplier nanoTime;
+    private final long origin;
+
+    private final int capacity;
+    private final long refillNanos;
+    private final int failuresBeforeBackoff;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long idleNanos;
+    // A bucket untouched for this long is full again and any backoff it had is over
+    private final long retainMillis;
+
+    TokenBucketThrottle(int capacity, long refillMillis, int failuresBeforeBackoff,
+                        long initialBackoffMillis, long maxBackoffMillis, int maxKeys, long idleMillis) {
+        this(capacity, refillMillis, failuresBeforeBackoff, initialBackoffMillis, maxBackoffMillis, maxKeys, idleMillis,
+                System::nanoTime);
+    }
+
+    TokenBucketThrottle(int capacity, long refillMillis, int failuresBeforeBackoff, long initialBackoffMillis,
+                        long maxBackoffMillis, int maxKeys, long idleMillis, LongSupplier nanoTime) {
+        this.buckets = new BoundedCache<>(maxKeys, bucket -> !isPunished(bucket.get(), now()),
+                () -> TimeUnit.NANOSECONDS.toMillis(now()));
+        this.nanoTime = nanoTime;
+        this.origin = nanoTime.getAsLong();
+        this.capacity = capacity;
+        this.refillNanos = refillMillis * 1_000_000;
+        this.failuresBeforeBackoff = failuresBeforeBackoff;
+        this.initialBackoffNanos = initialBackoffMillis * 1_000_000;
+        this.maxBackoffNanos = maxBackoffMillis * 1_000_000;
+        this.idleNanos = idleMillis * 1_000_000;
+        this.retainMillis = Math.max(idleMillis, Math.max(maxBackoffMillis, capacity * refillMillis));
+    }
+
+    // Takes a token, returns 0 if the attempt may go on or the milliseconds until the key is allowed again
+    long tryAcquire(String key) {
+        long now = now();
+        AtomicReference<State> bucket = buckets.get(key);
+        if (bucket == null) {
+            // Every key left has failures, the new one waits rather than another key losing its backoff
+            AtomicReference<State> created = new AtomicReference<>(new State(capacity, now, 0, 0, 0));
+            if (!retain(key, created)) {
+                return toMillis(initialBackoffNanos);
+            }
+            AtomicReference<State> stored = buckets.get(key);
+            bucket = stored != null ? stored : created;
+        } else {
+            retain(key, bucket);
+        }
+
+        while (true) {
+            State current = bucket.get();
+            if (now < current.blockedUntil()) {
+                return toMillis(current.blockedUntil() - now);
+            }
+
+            double tokens = Math.min(capacity, current.tokens() + (double) Math.max(0, now - current.refilledAt()) / refillNanos);
+            if (tokens < 1) {
+                return toMillis((long) Math.ceil((1 - tokens) * refillNanos));
+            }
+
+            State next = new State(tokens - 1, Math.max(now, current.refilledAt()), current.failures(), current.lastFailure(), current.blockedUntil());
+            if (bucket.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Past the allowed failures every further one doubles the wait, up to the maximum backoff
+    void recordFailure(String key) {
+        AtomicReference<State> bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+
+        long now = now();
+        while (true) {
+            State current = bucket.get();
+            // Failures spread further apart than the idle period are not a streak
+            int failures = current.failures() > 0 && now - current.lastFailure() > idleNanos ? 1 : current.failures() + 1;
+            long blockedUntil = current.blockedUntil();
+            if (failures >= failuresBeforeBackoff) {
+                int doublings = Math.min(failures - failuresBeforeBackoff, 30);
+                blockedUntil = now + Math.min(maxBackoffNanos, initialBackoffNanos << doublings);
+            }
+
+            State next = new State(current.tokens(), current.refilledAt(), failures, now, blockedUntil);
+            if (bucket.compareAndSet(current, next)) {
+                retain(key, bucket);
+                return;
+            }
+        }
+    }
+
+    void recordSuccess(String key) {
+        AtomicReference<State> bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+
+        while (true) {
+            State current = bucket.get();
+            if (current.failures() == 0) {
+                return;
+            }
+            State next = new State(current.tokens(), current.refilledAt(), 0, 0, 0);
+            if (bucket.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    // Keeps the bucket for another retain period, a concurrently created bucket for the key wins
+    private boolean retain(String key, AtomicReference<State> bucket) {
+        return buckets.merge(key, bucket, TimeUnit.NANOSECONDS.toMillis(now()) + retainMillis, (current, created) -> current);
+    }
+
+    // In backoff, or failed recently enough that the next failures continue the streak
+    private boolean isPunished(State state, long now) {
+        return now < state.blockedUntil() || (state.failures() > 0 && now - state.lastFailure() <= idleNanos);
+    }
+
+    private long now() {
+        return nanoTime.getAsLong() - origin;
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, (nanos + 999_999) / 1_000_000);
+    }
+
+    private record State(double tokens, long refilledAt, int failures, long lastFailure, long blockedUntil) { }
+}
@@ -0,0 +1,38 @@
+package com.example.user_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class UserImportConfig {
+
+    @Value("${user.import.hash-threads:2}")
+    private int hashThreads;
+
+    // Runs the import jobs one at a time
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService userImportExecutor() {
+        return Executors.newSingleThreadExecutor(daemonThreads("user-import"));
+    }
+
+    // Hashes imported passwords, separate from the request bulkhead so an import cannot reject logins
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService userImportHashingExecutor() {
+        return Executors.newFixedThreadPool(hashThreads, daemonThreads("user-import-hashing"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.user_service.config;
+
+import com.example.user_service.utils.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+import static com.example.user_service.utils.TransactionUtils.afterCommit;
+
+// Last known version of each user, so a conditional GET with a current ETag is answered without a query.
+// Writes record the version they produced after commit, and a version never goes back: a read that raced
+// with an update cannot put the older version over the newer one. Updates made by other instances are
+// seen once the entry expires.
+@Component
+public class UserVersionCache {
+
+    private final BoundedCache<Long, Long> entries;
+
+    private final long ttlMillis;
+
+    public UserVersionCache(@Value("${user.version-cache.max-size:10000}") int maxSize,
+                            @Value("${user.version-cache.ttl:30000}") long ttlMillis) {
+        this.entries = new BoundedCache<>(maxSize);
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Strong ETag of one version of a user
+    public static String etag(Long id, long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    // The version named by an If-Match ETag, null when it is not a strong ETag of this user
+    public static Long versionOf(String ifMatch, Long id) {
+        String prefix = "\"" + id + "-";
+        String value = ifMatch.trim();
+        if (!value.startsWith(prefix) || !value.endsWith("\"") || value.length() == prefix.length() + 1) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.substring(prefix.length(), value.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static boolean isAnyVersion(String ifMatch) {
+        return ifMatch.trim().equals("*");
+    }
+
+    public Long get(Long id) {
+        return entries.get(id);
+    }
+
+    public void put(Long id, long version) {
+        entries.merge(id, version, System.currentTimeMillis() + ttlMillis, Math::max);
+    }
+
+    // A write that knows the version it produced, applied once the transaction commits
+    public void recordUpdated(Long id, long version) {
+        afterCommit(() -> put(id, version));
+    }
+
+    // A write that does not know the resulting version, or a delete
+    public void evict(Long id) {
+        afterCommit(() -> entries.remove(id));
+    }
+
+    public void evictAll(Collection<Long> ids) {
+        afterCommit(() -> ids.forEach(entries::remove));
+    }
+}
@@ -1,4 +1,58 @@
 package com.example.user_service.controllers;
 
+import com.example.user_service.dtos.ImportJobDTO;
+import com.example.user_service.exceptions.ExceptionHandlers;
+import com.example.user_service.services.UserImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/admin")
 public class AdminController {
+
+    @Autowired
+    private UserImportService userImportService;
+
+
+    @PostMapping(value = "/users/import", consumes = {"application/json", "application/x-ndjson"})
+    @Operation(summary = "Imports users in bulk.", description = "Receives a JSON array or NDJSON of users with the register fields and imports them in the background.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Import started, the job can be followed with the returned id."),
+            @ApiResponse(responseCode = "403", description = "Forbidden access, must be admin.")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> importUsers(HttpServletRequest request) throws IOException {
+        ImportJobDTO job = userImportService.startImport(request.getInputStream());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/admin/users/import/" + job.id()))
+                .body(job);
+    }
+
+
+    @GetMapping("/users/import/{id}")
+    @Operation(summary = "Gets the progress of an import.", description = "Returns the counters and the row errors of an import job.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Data successfully received."),
+            @ApiResponse(responseCode = "403", description = "Forbidden access, must be admin."),
+            @ApiResponse(responseCode = "404", description = "Bad request, invalid id.")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getImport(@PathVariable String id) {
+
+        ImportJobDTO job = userImportService.getJob(id);
+        if (job == null) {
+            return ExceptionHandlers.errorResponse(HttpStatus.NOT_FOUND, "Import with ID " + id + " not found.");
+        }
+        return ResponseEntity.ok(job);
+    }
 }
@@ -1,26 +1,37 @@
 package com.example.user_service.controllers;
 
+import com.example.user_service.config.AuthenticatedUser;
 import com.example.user_service.config.JwtUtils;
+import com.example.user_service.config.LoginThrottle;
+import com.example.user_service.dtos.ErrorResponseDTO;
 import com.example.user_service.dtos.LoginUser;
 import com.example.user_service.dtos.NewUser;
-import com.example.user_service.exceptions.NoUsersFoundException;
-import com.example.user_service.models.UserEntity;
-import com.example.user_service.repositories.UserRepository;
+import com.example.user_service.dtos.RefreshTokenRequest;
+import com.example.user_service.dtos.ResendVerificationRequest;
+import com.example.user_service.dtos.TokenResponseDTO;
+import com.example.user_service.exceptions.ExceptionHandlers;
+import com.example.user_service.exceptions.InvalidTokenException;
+import com.example.user_service.exceptions.PasswordHashingRejectedException;
+import com.example.user_service.services.RefreshTokenService;
 import com.example.user_service.services.UserService;
-import jakarta.validation.ValidationException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.regex.Matcher;
-
-import static com.example.user_service.utils.ValidationUtils.EMAIL_PATTERN;
-import static com.example.user_service.utils.ValidationUtils.PASSWORD_PATTERN;
+import java.time.Instant;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -35,114 +46,127 @@ public class AuthController {
     @Autowired
     UserService userService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
 
     @PostMapping("/login")
-    public ResponseEntity<String> authenticateUser(@RequestBody LoginUser loginRequest) {
+    public ResponseEntity<?> authenticateUser(@RequestBody LoginUser loginRequest, HttpServletRequest request) {
+
+        // Rejected before the AuthenticationManager, a throttled attempt never reaches the password encoder
+        // Taken from X-Forwarded-For by Tomcat when the request came through a trusted proxy
+        String clientIp = request.getRemoteAddr();
+        long retryAfterMillis = loginThrottle.tryAcquire(loginRequest.email(), clientIp);
+        if (retryAfterMillis > 0) {
+            countLogin("failure", "throttled");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMillis + 999) / 1000))
+                    .body(ErrorResponseDTO.of(HttpStatus.TOO_MANY_REQUESTS, "Too many login attempts, try again later."));
+        }
 
+        Authentication authentication;
         try {
-            Authentication authentication = authenticationManager.authenticate(
+            authentication = authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             loginRequest.email(),
                             loginRequest.password()
                     )
             );
-
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-            UserEntity user = userService.getUserByEmail(authentication.getName());
-            assert user != null;
-
-            if (!user.isVerified()) {
-                return new ResponseEntity<>("Your email is not verified. Check your inbox.", HttpStatus.UNAUTHORIZED);
-            }
-
-            String jwt = jwtUtil.createToken(authentication.getName(), user.getId(), user.getRole());
-            return ResponseEntity.ok(jwt);
-
-        } catch (Exception ex) {
-            return  new ResponseEntity<>("Password or email invalid.", HttpStatus.UNAUTHORIZED);
-
+        } catch (BadCredentialsException ex) {
+            loginThrottle.recordFailure(loginRequest.email(), clientIp);
+            countLogin("failure", "bad_credentials");
+            return ExceptionHandlers.errorResponse(HttpStatus.UNAUTHORIZED, "Password or email invalid.");
+
+        } catch (AuthenticationException ex) {
+            countLogin("failure", "error");
+            return ExceptionHandlers.errorResponse(HttpStatus.UNAUTHORIZED, "Password or email invalid.");
+
+        } catch (PasswordHashingRejectedException ex) {
+            countLogin("failure", "busy");
+            throw ex;
         }
-    }
-
-    @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody NewUser newUser) {
-
-        try {
-
-            validateNewUser(newUser);
-
-            userService.createNewUser(newUser);
-            return new ResponseEntity<>("User registered successfully, check your inbox to validate your email.", HttpStatus.CREATED);
 
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(e.getMessage());
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        // The principal is the projection loaded during authentication, no second lookup is needed
+        AuthenticatedUser user = (AuthenticatedUser) authentication.getPrincipal();
+        // The password was right, even if the email is not verified yet
+        loginThrottle.recordSuccess(loginRequest.email());
 
+        if (!user.verified()) {
+            countLogin("failure", "unverified");
+            return ExceptionHandlers.errorResponse(HttpStatus.UNAUTHORIZED, "Your email is not verified. Check your inbox.");
         }
-    }
 
+        TokenResponseDTO tokens = refreshTokenService.issue(user.id(), user.email(), user.role());
+        countLogin("success", "none");
+        return ResponseEntity.ok(tokens);
+    }
 
-    @GetMapping("/verify")
-    public ResponseEntity<String> verifyEmail(@RequestParam("token") String token) {
-        UserEntity user = userService.findByVerificationToken(token);
+    // Exchanges a refresh token for a new pair, the presented token cannot be used again
+    @PostMapping("/refresh")
+    public ResponseEntity<TokenResponseDTO> refresh(@RequestBody RefreshTokenRequest refreshTokenRequest) throws InvalidTokenException {
+        return ResponseEntity.ok(refreshTokenService.refresh(refreshTokenRequest.refreshToken()));
+    }
 
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid or expired token.");
+    // Ends the refresh token family and revokes the access token sent with the request, if any.
+    // Idempotent, an unknown or expired token still answers 204.
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestBody(required = false) RefreshTokenRequest refreshTokenRequest,
+                                       @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        String accessJti = null;
+        Instant accessExpiresAt = null;
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            try {
+                Claims claims = jwtUtil.parseClaims(authorization.substring("Bearer ".length()));
+                accessJti = claims.getId();
+                accessExpiresAt = claims.getExpiration().toInstant();
+            } catch (JwtException | IllegalArgumentException ignored) {
+                // An invalid access token is of no use to anyone, there is nothing to revoke
+            }
         }
 
-        user.setVerified(true);
-        user.setVerificationToken(null);
-        userService.saveUser(user);
-        userService.welcomeEmail(user.getEmail());
-
-        return ResponseEntity.ok("Email verified successfully! You can now log in!");
+        refreshTokenService.logout(refreshTokenRequest != null ? refreshTokenRequest.refreshToken() : null, accessJti, accessExpiresAt);
+        return ResponseEntity.noContent().build();
     }
 
-
-    // Validations
-    public void validateNewUser (NewUser newUser) throws Exception {
-        validateUserName(newUser.username());
-        validatePassword(newUser.password());
-        validateUserEmail(newUser.email());
-        validateIfEmailExist(newUser.email());
-        validateIfRoleIsCorrect(newUser.role());
+    // Unknown emails are reported as bad_credentials too, Spring Security hides them on purpose
+    private void countLogin(String result, String reason) {
+        Counter.builder("auth.login")
+                .tag("result", result)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
     }
 
-    public static void validateUserName (String username) throws ValidationException {
-        if (username == null || username.isBlank()) {
-            throw new ValidationException("Username cannot be null or blank.");
-        }
+    // Validation, the duplicated email check and a saturated hashing pool are answered by ExceptionHandlers
+    @PostMapping("/register")
+    public ResponseEntity<String> register(@RequestBody NewUser newUser) throws Exception {
+        userService.createNewUser(newUser);
+        return new ResponseEntity<>("User registered successfully, check your inbox to validate your email.", HttpStatus.CREATED);
     }
 
-    public static void validatePassword (String password) throws ValidationException {
-        if (password == null || password.isBlank()) {
-            throw new ValidationException("Password cannot be null or blank.");
-        }
-        Matcher matcher = PASSWORD_PATTERN.matcher(password);
-        if(!matcher.matches()) {
-            throw new ValidationException("Password must have at lest: one digit, a lower and upper case letter, a special character, 8 characters and no whitespace.");
-        }
-    }
 
-    public static void validateUserEmail (String email) throws ValidationException {
-        if (email == null || email.isBlank()) {
-            throw new ValidationException("Email cannot be null or blank.");
-        }
-        Matcher matcher = EMAIL_PATTERN.matcher(email);
-        if(!matcher.matches()) {
-            throw new ValidationException("Invalid email format: must have at least 8 characters and a '@'.");
+    @GetMapping("/verify")
+    public ResponseEntity<?> verifyEmail(@RequestParam("token") String token) {
+        if (!userService.verifyEmail(token)) {
+            return ExceptionHandlers.errorResponse(HttpStatus.BAD_REQUEST, "Invalid or expired token.");
         }
-    }
 
-    public void validateIfEmailExist (String email) {
-        if (userService.validateEmailExist(email) != null) {
-            throw new ValidationException ("This email is already registered.");
-        }
+        return ResponseEntity.ok("Email verified successfully! You can now log in!");
     }
 
-    public static void validateIfRoleIsCorrect(String role) {
-        if (!role.equals("USER") && !role.equals("ADMIN")) {
-            throw new ValidationException("Role must be ADMIN or USER.");
-        }
+
+    // For links that expired or got lost, the user keeps the registration and gets a new link
+    @PostMapping("/verify/resend")
+    public ResponseEntity<String> resendVerificationEmail(@RequestBody ResendVerificationRequest request) {
+        userService.resendVerificationEmail(request.email());
+        return new ResponseEntity<>("If the email is registered and not verified yet, a new verification link was sent.", HttpStatus.ACCEPTED);
     }
 }
 
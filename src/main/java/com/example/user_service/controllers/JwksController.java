@@ -0,0 +1,54 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtKeyRing;
+import com.example.user_service.exceptions.ExceptionHandlers;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Duration;
+
+@RestController
+public class JwksController {
+
+    @Autowired
+    private JwtKeyRing jwtKeyRing;
+
+    // Shorter than a rotation, a peer that sees an unknown kid should fetch the set again anyway
+    @Value("${jwt.jwks.max-age:PT5M}")
+    private Duration maxAge;
+
+    @GetMapping("/.well-known/jwks.json")
+    @Operation(summary = "Gets the public signing keys.", description = "Returns the JSON Web Key Set peer services verify the tokens with.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Key set successfully received."),
+            @ApiResponse(responseCode = "304", description = "The cached key set is still current."),
+            @ApiResponse(responseCode = "404", description = "Tokens are signed with a shared secret, there are no public keys.")
+    })
+    public ResponseEntity<?> getJwks(WebRequest request) {
+        if (!jwtKeyRing.isEnabled()) {
+            return ExceptionHandlers.errorResponse(HttpStatus.NOT_FOUND, "Tokens are signed with a shared secret, there are no public keys.");
+        }
+
+        String etag = jwtKeyRing.getJwksETag();
+        CacheControl cacheControl = CacheControl.maxAge(maxAge).cachePublic();
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.parseMediaType("application/jwk-set+json"))
+                .body(jwtKeyRing.getJwks());
+    }
+}
@@ -1,20 +1,32 @@
 package com.example.user_service.controllers;
 
-import com.example.user_service.dtos.UpdateUser;
-import com.example.user_service.dtos.UpdateUserRoleOrVerified;
-import com.example.user_service.dtos.UserAllDataDTO;
-import com.example.user_service.dtos.UserDTO;
-import com.example.user_service.exceptions.*;
+import com.example.user_service.config.UserVersionCache;
+import com.example.user_service.dtos.*;
+import com.example.user_service.exceptions.BatchRequestException;
+import com.example.user_service.exceptions.ExceptionHandlers;
+import com.example.user_service.exceptions.NoUsersFoundException;
+import com.example.user_service.models.RoleType;
 import com.example.user_service.services.TokenDataServiceImpl;
+import com.example.user_service.services.UserSearchService;
 import com.example.user_service.services.UserService;
+import com.example.user_service.services.UserServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api/user")
@@ -26,9 +38,19 @@ public class UserController {
     @Autowired
     private TokenDataServiceImpl tokenDataService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    // 0 lets an export run for as long as it takes
+    @Value("${user.export.timeout:1h}")
+    private Duration exportTimeout;
+
     @GetMapping("/")
-    public ResponseEntity<String> invalidPath() {
-        return ResponseEntity.badRequest().body("The url provided is invalid.");
+    public ResponseEntity<ErrorResponseDTO> invalidPath() {
+        return ExceptionHandlers.errorResponse(HttpStatus.BAD_REQUEST, "The url provided is invalid.");
     }
 
 
@@ -36,27 +58,22 @@ public class UserController {
     @Operation(summary = "Gets the user data with the id", description = "Receives an id and returns all the data of the specified user.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Data successfully received."),
+            @ApiResponse(responseCode = "304", description = "The user did not change since the ETag sent in If-None-Match."),
             @ApiResponse(responseCode = "403", description = "Forbidden access to another users data."),
             @ApiResponse(responseCode = "404", description = "Bad request, invalid id.")
     })
-    public ResponseEntity<?> getUserById(@PathVariable Long id, HttpServletRequest request) throws NoUsersFoundException {
-
-        try {
-            String authenticatedUserRole = tokenDataService.getRole(request);
-
-            if (authenticatedUserRole.equals("ADMIN")) {
-                UserAllDataDTO userAllDataDTO = userService.getUserDTOByIdWithRole(id);
-                return ResponseEntity.ok(userAllDataDTO);
-
-            } else return new ResponseEntity<>("Forbidden: You cannot access another user's data.", HttpStatus.FORBIDDEN);
-
-        } catch (NoUsersFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
-
-        } catch (Exception e) {
-            return new ResponseEntity<>("An error occurred while searching the users data, try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getUserById(@PathVariable Long id, WebRequest request) throws NoUsersFoundException {
 
+        ResponseEntity<?> notModified = notModified(id, request);
+        if (notModified != null) {
+            return notModified;
         }
+
+        UserAllDataDTO userAllDataDTO = userService.getUserDTOByIdWithRole(id);
+        return ResponseEntity.ok()
+                .eTag(UserVersionCache.etag(id, userAllDataDTO.getVersion()))
+                .body(userAllDataDTO);
     }
 
 
@@ -64,23 +81,40 @@ public class UserController {
     @Operation(summary = "Gets the user logged data with the id", description = "Receives an id and returns all the data of the specified user.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Data successfully received."),
+            @ApiResponse(responseCode = "304", description = "The user did not change since the ETag sent in If-None-Match."),
             @ApiResponse(responseCode = "404", description = "Bad request, invalid id.")
     })
-    public ResponseEntity<?> getLoggedUserById(HttpServletRequest request) throws NoUsersFoundException {
+    public ResponseEntity<?> getLoggedUserById(WebRequest request) throws NoUsersFoundException {
 
-        try {
-            Long authenticatedUserId = tokenDataService.getId(request);
+        Long authenticatedUserId = tokenDataService.getId();
 
-            UserDTO userDTO = userService.getUserDTOById(authenticatedUserId);
-            return ResponseEntity.ok(userDTO);
+        ResponseEntity<?> notModified = notModified(authenticatedUserId, request);
+        if (notModified != null) {
+            return notModified;
+        }
 
-        } catch (NoUsersFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        UserDTO userDTO = userService.getUserDTOById(authenticatedUserId);
+        return ResponseEntity.ok()
+                .eTag(UserVersionCache.etag(authenticatedUserId, userDTO.getVersion()))
+                .body(userDTO);
+    }
 
-        } catch (Exception e) {
-            return new ResponseEntity<>("An error occurred while searching the users data, try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
+    // Polling clients send the ETag they have, a current one is answered from the version alone
+    private ResponseEntity<?> notModified(Long id, WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) == null) {
+            return null;
+        }
+
+        Long version = userService.getUserVersion(id);
+        if (version == null) {
+            return null;
+        }
 
+        // checkNotModified already wrote the ETag header of the 304
+        if (!request.checkNotModified(UserVersionCache.etag(id, version))) {
+            return null;
         }
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
     }
 
 
@@ -112,23 +146,97 @@ public class UserController {
             @ApiResponse(responseCode = "403", description = "Forbidden access to another users data."),
             @ApiResponse(responseCode = "404", description = "Bad request there are no users.")
     })
-    public ResponseEntity<?> getAllUsers(HttpServletRequest request) throws NoUsersFoundException {
-        try {
-            String authenticatedUserRole = tokenDataService.getRole(request);
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getAllUsers() throws NoUsersFoundException {
+        return ResponseEntity.ok(userService.getAllUsers());
+    }
 
-            if (!authenticatedUserRole.equals("ADMIN")) {
-                return new ResponseEntity<>("Forbidden: You cannot access another user's data.", HttpStatus.FORBIDDEN);
-            }
 
-            return ResponseEntity.ok(userService.getAllUsers());
+    @GetMapping("/users/page")
+    @Operation(summary = "Gets a page of users.", description = "Returns up to size users with an id greater than after, and the cursor of the next page.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Data successfully received."),
+            @ApiResponse(responseCode = "403", description = "Forbidden access to another users data.")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getUsersPage(@RequestParam(defaultValue = "0") Long after,
+                                          @RequestParam(defaultValue = "100") int size) {
+        return ResponseEntity.ok(userService.getUsersPage(after, size));
+    }
 
-        } catch (NoUsersFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
 
-        } catch (Exception e) {
-            return new ResponseEntity<>("An error occurred while searching the users data, try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
+    @GetMapping("/users/search")
+    @Operation(summary = "Searches users.", description = "Filters by role, verification state and case insensitive username or email prefix, in pages with an opaque cursor.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Data successfully received."),
+            @ApiResponse(responseCode = "400", description = "Bad request, invalid role, verification state or cursor."),
+            @ApiResponse(responseCode = "403", description = "Forbidden access to another users data.")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<UserSearchPageDTO> searchUsers(@RequestParam(required = false) String role,
+                                                         @RequestParam(required = false) String verified,
+                                                         @RequestParam(required = false) String username,
+                                                         @RequestParam(required = false) String email,
+                                                         @RequestParam(defaultValue = "100") int size,
+                                                         @RequestParam(required = false) String cursor) throws Exception {
+        RoleType roleType = null;
+        if (role != null && !role.isBlank()) {
+            UserServiceImpl.validateIfRoleIsCorrect(role);
+            roleType = RoleType.valueOf(role);
+        }
 
+        Boolean isVerified = null;
+        if (verified != null && !verified.isBlank()) {
+            UserServiceImpl.validateIfVerifiedIsCorrect(verified);
+            isVerified = verified.equals("true");
         }
+
+        return ResponseEntity.ok(userSearchService.search(roleType, isVerified, username, email, size, cursor));
+    }
+
+
+    @PostMapping("/batch")
+    @Operation(summary = "Gets several users at once.", description = "Receives up to ${user.batch.max-size} ids or emails (the user.batch.max-size setting) and returns the users in the same order, with the ones that were not found.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Data successfully received."),
+            @ApiResponse(responseCode = "400", description = "Bad request, send either ids or emails and no more than the limit."),
+            @ApiResponse(responseCode = "403", description = "Forbidden access to another users data.")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<UserBatchDTO> getUsersBatch(@RequestBody UserBatchRequest userBatchRequest) throws BatchRequestException {
+        return ResponseEntity.ok(userService.getUsersBatch(userBatchRequest));
+    }
+
+
+    @GetMapping("/users/export")
+    @Operation(summary = "Exports all the users.", description = "Streams every user as NDJSON or CSV without loading the whole table.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Export started."),
+            @ApiResponse(responseCode = "400", description = "Bad request, format must be ndjson or csv."),
+            @ApiResponse(responseCode = "403", description = "Forbidden access to another users data.")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format, WebRequest request) {
+
+        if (!format.equals("ndjson") && !format.equals("csv")) {
+            return errorBody(HttpStatus.BAD_REQUEST, "Format must be ndjson or csv.");
+        }
+
+        // A whole table takes longer than the default async timeout, which would cut the file short after the 200
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(exportTimeout.toMillis());
+
+        // The body is written after the handler returns, straight from the database cursor to the response
+        StreamingResponseBody body = outputStream -> userService.exportUsers(format, outputStream);
+        return ResponseEntity.ok()
+                .contentType(format.equals("csv") ? new MediaType("text", "csv") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + format)
+                .body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> errorBody(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> objectMapper.writeValue(outputStream, ErrorResponseDTO.of(status, message)));
     }
 
 
@@ -139,15 +247,22 @@ public class UserController {
             @ApiResponse(responseCode = "403", description = "Forbidden access to this data, must be admin."),
             @ApiResponse(responseCode = "400", description = "Bad request.")
     })
-    public ResponseEntity<?> getAllRoles(HttpServletRequest request) {
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getAllRoles() {
 
-        String authenticatedUserRole = tokenDataService.getRole(request);
+        return ResponseEntity.ok(userService.getAllRoles());
+    }
 
-        if (!authenticatedUserRole.equals("ADMIN")) {
-            return new ResponseEntity<>("Forbidden: You cannot access this data.", HttpStatus.FORBIDDEN);
-        }
 
-        return ResponseEntity.ok(userService.getAllRoles());
+    @GetMapping("/stats")
+    @Operation(summary = "Gets the user statistics.", description = "Returns the number of users in total, per verification state and per role.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Data successfully received."),
+            @ApiResponse(responseCode = "403", description = "Forbidden access to this data, must be admin.")
+    })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<UserStatsDTO> getUserStats() {
+        return ResponseEntity.ok(userService.getUserStats());
     }
 
 
@@ -156,30 +271,23 @@ public class UserController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "User successfully updated."),
             @ApiResponse(responseCode = "403", description = "Forbidden access to update another users data."),
-            @ApiResponse(responseCode = "400", description = "Bad request, invalid id.")
+            @ApiResponse(responseCode = "400", description = "Bad request, invalid id."),
+            @ApiResponse(responseCode = "409", description = "The user was modified at the same time, get it again and retry."),
+            @ApiResponse(responseCode = "412", description = "The user changed since the ETag sent in If-Match.")
     })
-    public ResponseEntity<?> updateUserById(@RequestBody UpdateUser updateUser, HttpServletRequest request) throws Exception {
+    public ResponseEntity<?> updateUserById(@RequestBody UpdateUser updateUser,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws Exception {
 
-        try {
-            Long authenticatedUserId = tokenDataService.getId(request);
+        Long authenticatedUserId = tokenDataService.getId();
 
 //            if (!authenticatedUserId.equals(id)) {
 //                return new ResponseEntity<>("Forbidden: You cannot update another user's data.", HttpStatus.FORBIDDEN);
 //            }
 
-            UserDTO updatedUser = userService.updateUserById(updateUser, authenticatedUserId);
-            return ResponseEntity.status(HttpStatus.CREATED).body(updatedUser);
-
-        } catch (NoUsersFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
-
-        } catch (UserNameException | PasswordException | EmailException | RoleException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
-
-        } catch (Exception e) {
-            return new ResponseEntity<>("An error occurred while updating the user, try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
-
-        }
+        UserDTO updatedUser = userService.updateUserById(updateUser, authenticatedUserId, ifMatch);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .eTag(UserVersionCache.etag(authenticatedUserId, updatedUser.getVersion()))
+                .body(updatedUser);
     }
 
 
@@ -188,58 +296,26 @@ public class UserController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "User role successfully updated."),
             @ApiResponse(responseCode = "403", description = "Forbidden access to another users data, must be admin."),
-            @ApiResponse(responseCode = "400", description = "Bad request, invalid id.")
+            @ApiResponse(responseCode = "400", description = "Bad request, invalid id, role or isVerified, or neither of them given.")
     })
-    public ResponseEntity<?> updateUserRoleById(@RequestBody UpdateUserRoleOrVerified updateUserRoleOrVerified, @PathVariable Long id, HttpServletRequest request) throws Exception {
-
-        try {
-            String authenticatedUserRole = tokenDataService.getRole(request);
-
-            if (!authenticatedUserRole.equals("ADMIN")) {
-                return new ResponseEntity<>("Forbidden: You cannot access this data.", HttpStatus.FORBIDDEN);
-            }
-
-            userService.updateUserRoleVerifiedById(updateUserRoleOrVerified, id);
-            String userEmail = userService.getEmailById(id);
-            return ResponseEntity.status(HttpStatus.CREATED).body("User successfully updated with email: " + userEmail + " - and id: " + id + ".");
-
-        } catch (NoUsersFoundException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
-
-        } catch ( RoleException e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> updateUserRoleById(@RequestBody UpdateUserRoleOrVerified updateUserRoleOrVerified, @PathVariable Long id) throws Exception {
 
-        } catch (Exception e) {
-            return new ResponseEntity<>("An error occurred while updating the user role, try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
-
-        }
+        UserDTO updatedUser = userService.updateUserRoleVerifiedById(updateUserRoleOrVerified, id);
+        return ResponseEntity.status(HttpStatus.CREATED).body("User successfully updated with email: " + updatedUser.getEmail() + " - and id: " + id + ".");
     }
 
     @DeleteMapping("/unverified")
-    @Operation(summary = "Deletes all unverified users", description = "Deletes all unverified users")
+    @Operation(summary = "Deletes all unverified users", description = "Deletes the unverified users older than the retention period, in chunks.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Unverified users successfully deleted."),
             @ApiResponse(responseCode = "403", description = "Forbidden access, must be admin."),
             @ApiResponse(responseCode = "200", description = "There are no unverified users.")
     })
-    public ResponseEntity<String> deleteUnverifiedUsers(HttpServletRequest request) {
-        try {
-            String authenticatedUserRole = tokenDataService.getRole(request);
-
-            if (!authenticatedUserRole.equals("ADMIN")) {
-                return new ResponseEntity<>("Forbidden: You cannot access this data.", HttpStatus.FORBIDDEN);
-            }
-
-            userService.deleteUnverifiedUsers();
-            return ResponseEntity.ok("Unverified users successfully deleted.");
-
-        } catch ( NoUsersFoundException e) {
-        return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
-
-        } catch (Exception e) {
-            return new ResponseEntity<>("An error occurred while deleting unverified users, try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
-
-        }
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<String> deleteUnverifiedUsers() throws NoUsersFoundException {
+        userService.deleteUnverifiedUsers();
+        return ResponseEntity.ok("Unverified users successfully deleted.");
     }
 }
 
@@ -0,0 +1,11 @@
+package com.example.user_service.dtos;
+
+import org.springframework.http.HttpStatus;
+
+// Body of every error response, from the controllers as well as the security filters
+public record ErrorResponseDTO(int status, String error, String message) {
+
+    public static ErrorResponseDTO of(HttpStatus status, String message) {
+        return new ErrorResponseDTO(status.value(), status.getReasonPhrase(), message);
+    }
+}
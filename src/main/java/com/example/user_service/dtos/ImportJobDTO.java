@@ -0,0 +1,8 @@
+package com.example.user_service.dtos;
+
+import java.time.Instant;
+import java.util.List;
+
+public record ImportJobDTO(String id, String status, long processed, long imported, long failed,
+                           Instant startedAt, Instant finishedAt, List<ImportRowErrorDTO> errors) {
+}
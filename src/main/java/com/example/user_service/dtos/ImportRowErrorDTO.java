@@ -0,0 +1,5 @@
+package com.example.user_service.dtos;
+
+// row is the position of the user in the imported file, starting at 1
+public record ImportRowErrorDTO(long row, String email, String message) {
+}
@@ -0,0 +1,4 @@
+package com.example.user_service.dtos;
+
+public record ResendVerificationRequest(String email) {
+}
@@ -0,0 +1,5 @@
+package com.example.user_service.dtos;
+
+// expiresIn is the access token lifetime in seconds, the refresh token is exchanged for the next pair before then
+public record TokenResponseDTO(String accessToken, String refreshToken, String tokenType, long expiresIn) {
+}
@@ -2,12 +2,16 @@ package com.example.user_service.dtos;
 
 import com.example.user_service.models.RoleType;
 import com.example.user_service.models.UserEntity;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 public class UserAllDataDTO {
 
     private Long id;
     private String username, email;
     private RoleType role;
+    // Sent as the ETag header, not in the body
+    @JsonIgnore
+    private Long version;
 //    private List<>;
 
 
@@ -16,6 +20,20 @@ public class UserAllDataDTO {
         username = user.getUsername();
         email = user.getEmail();
         role = user.getRole();
+        version = user.getVersion();
+    }
+
+    // Used by the repository constructor expressions, so no entity is loaded
+    public UserAllDataDTO(Long id, String username, String email, RoleType role) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+        this.role = role;
+    }
+
+    public UserAllDataDTO(Long id, String username, String email, RoleType role, Long version) {
+        this(id, username, email, role);
+        this.version = version;
     }
 
     public Long getId() {
@@ -33,4 +51,8 @@ public class UserAllDataDTO {
     public RoleType getRole() {
         return role;
     }
+
+    public Long getVersion() {
+        return version;
+    }
 }
@@ -0,0 +1,7 @@
+package com.example.user_service.dtos;
+
+import java.util.List;
+
+// users follows the order of the request without repeated entries, the keys that matched no user are listed in missing
+public record UserBatchDTO(List<UserAllDataDTO> users, List<Object> missing) {
+}
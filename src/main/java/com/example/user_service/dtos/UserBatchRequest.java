@@ -0,0 +1,7 @@
+package com.example.user_service.dtos;
+
+import java.util.List;
+
+// Either ids or emails, not both
+public record UserBatchRequest(List<Long> ids, List<String> emails) {
+}
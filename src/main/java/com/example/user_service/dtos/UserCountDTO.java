@@ -0,0 +1,7 @@
+package com.example.user_service.dtos;
+
+import com.example.user_service.models.RoleType;
+
+// One row of the grouped count the statistics are seeded and reconciled from
+public record UserCountDTO(RoleType role, boolean verified, long count) {
+}
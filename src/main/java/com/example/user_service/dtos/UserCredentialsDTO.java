@@ -0,0 +1,5 @@
+package com.example.user_service.dtos;
+
+// Internal projection for profile updates, it carries the password hash so it is never returned to clients
+public record UserCredentialsDTO(Long id, String username, String email, String password, long version) {
+}
@@ -1,11 +1,15 @@
 package com.example.user_service.dtos;
 
 import com.example.user_service.models.UserEntity;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 public class UserDTO {
 
     private Long id;
     private String username, email;
+    // Sent as the ETag header, not in the body
+    @JsonIgnore
+    private Long version;
 //    private List<>;
 
 
@@ -13,6 +17,18 @@ public class UserDTO {
         id = user.getId();
         username = user.getUsername();
         email = user.getEmail();
+        version = user.getVersion();
+    }
+
+    public UserDTO(Long id, String username, String email) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+    }
+
+    public UserDTO(Long id, String username, String email, Long version) {
+        this(id, username, email);
+        this.version = version;
     }
 
     public Long getId() {
@@ -26,4 +42,8 @@ public class UserDTO {
     public String getEmail() {
         return email;
     }
+
+    public Long getVersion() {
+        return version;
+    }
 }
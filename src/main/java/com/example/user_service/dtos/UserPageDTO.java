@@ -0,0 +1,7 @@
+package com.example.user_service.dtos;
+
+import java.util.List;
+
+// nextCursor is the id to pass as "after" for the next page, null when there are no more users
+public record UserPageDTO(List<UserAllDataDTO> users, Long nextCursor) {
+}
@@ -0,0 +1,7 @@
+package com.example.user_service.dtos;
+
+import java.util.List;
+
+// nextCursor is passed back unchanged for the next page, null when there are no more users
+public record UserSearchPageDTO(List<UserAllDataDTO> users, String nextCursor) {
+}
@@ -0,0 +1,11 @@
+package com.example.user_service.dtos;
+
+import com.example.user_service.models.RoleType;
+
+import java.util.Map;
+
+public record UserStatsDTO(long total, long verified, long unverified, Map<RoleType, RoleStats> roles) {
+
+    public record RoleStats(long total, long verified, long unverified) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.user_service.dtos;
+
+import com.example.user_service.models.RoleType;
+
+// Internal projection with the role and verification state before a change, so the statistics can move the user
+public record UserStatusDTO(Long id, String username, String email, RoleType role, boolean verified, long version) {
+}
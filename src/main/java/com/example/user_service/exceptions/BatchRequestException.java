@@ -0,0 +1,7 @@
+package com.example.user_service.exceptions;
+
+public class BatchRequestException extends DomainException {
+    public BatchRequestException(String message) {
+        super(message);
+    }
+}
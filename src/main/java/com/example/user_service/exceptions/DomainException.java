@@ -0,0 +1,10 @@
+package com.example.user_service.exceptions;
+
+// Expected business outcomes like a missing user or an invalid field. They are part of normal traffic,
+// so no stack trace is filled in and suppression is disabled, creating one costs little more than its message.
+public abstract class DomainException extends Exception {
+
+    protected DomainException(String message) {
+        super(message, null, false, false);
+    }
+}
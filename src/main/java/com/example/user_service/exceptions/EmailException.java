@@ -1,6 +1,6 @@
 package com.example.user_service.exceptions;
 
-public class EmailException extends Exception {
+public class EmailException extends DomainException {
     public EmailException(String message) {
         super(message);
     }
@@ -1,33 +1,112 @@
 package com.example.user_service.exceptions;
 
+import com.example.user_service.dtos.ErrorResponseDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.ErrorResponse;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.io.IOException;
+
+// Turns every exception that leaves a controller into an ErrorResponseDTO, the controllers only handle the happy path
+@RestControllerAdvice
 public class ExceptionHandlers {
 
-    @ExceptionHandler(UserNameException.class)
-    public ResponseEntity<String> userExceptionHandler(UserNameException userNameException){
-        return new ResponseEntity<>(userNameException.getMessage(), HttpStatus.BAD_REQUEST);
+    private static final Logger log = LoggerFactory.getLogger(ExceptionHandlers.class);
+
+    @ExceptionHandler(NoUsersFoundException.class)
+    public ResponseEntity<ErrorResponseDTO> notFoundHandler(NoUsersFoundException noUsersFoundException){
+        return errorResponse(HttpStatus.NOT_FOUND, noUsersFoundException.getMessage());
+    }
+
+    @ExceptionHandler({UserNameException.class, PasswordException.class, EmailException.class, RoleException.class, BatchRequestException.class, InvalidCursorException.class})
+    public ResponseEntity<ErrorResponseDTO> validationHandler(DomainException domainException){
+        return errorResponse(HttpStatus.BAD_REQUEST, domainException.getMessage());
     }
 
-    @ExceptionHandler(PasswordException.class)
-    public ResponseEntity<String> userExceptionHandler(PasswordException passwordException){
-        return new ResponseEntity<>(passwordException.getMessage(), HttpStatus.BAD_REQUEST);
+    @ExceptionHandler({TypeMismatchException.class, HttpMessageNotReadableException.class})
+    public ResponseEntity<ErrorResponseDTO> badRequestHandler(Exception exception){
+        return errorResponse(HttpStatus.BAD_REQUEST, "The request is malformed.");
     }
 
-    @ExceptionHandler(EmailException.class)
-    public ResponseEntity<String> userExceptionHandler(EmailException emailException){
-        return new ResponseEntity<>(emailException.getMessage(), HttpStatus.BAD_REQUEST);
+    @ExceptionHandler(UserVersionConflictException.class)
+    public ResponseEntity<ErrorResponseDTO> conflictHandler(UserVersionConflictException userVersionConflictException){
+        return errorResponse(HttpStatus.CONFLICT, userVersionConflictException.getMessage());
     }
 
-    @ExceptionHandler(RoleException.class)
-    public ResponseEntity<String> userExceptionHandler(RoleException roleException){
-        return new ResponseEntity<>(roleException.getMessage(), HttpStatus.BAD_REQUEST);
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorResponseDTO> preconditionFailedHandler(PreconditionFailedException preconditionFailedException){
+        return errorResponse(HttpStatus.PRECONDITION_FAILED, preconditionFailedException.getMessage());
     }
 
-    @ExceptionHandler(NoUsersFoundException.class)
-    public ResponseEntity<String> userExceptionHandler(NoUsersFoundException noUsersFoundException){
-        return new ResponseEntity<>(noUsersFoundException.getMessage(), HttpStatus.NOT_FOUND);
+    // The hashing pool is saturated, the client should retry shortly
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<ErrorResponseDTO> serverBusyHandler(PasswordHashingRejectedException passwordHashingRejectedException){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ErrorResponseDTO.of(HttpStatus.SERVICE_UNAVAILABLE, "The server is busy, try again later."));
+    }
+
+    // Thrown by @PreAuthorize inside the handler invocation, so it reaches the advice before the security filters
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<ErrorResponseDTO> accessDeniedHandler(AccessDeniedException accessDeniedException){
+        return errorResponse(HttpStatus.FORBIDDEN, "Forbidden: You cannot access this data.");
+    }
+
+    // A refresh token that is unknown, expired, already used or belongs to a user who can no longer log in
+    @ExceptionHandler(InvalidTokenException.class)
+    public ResponseEntity<ErrorResponseDTO> invalidTokenHandler(InvalidTokenException invalidTokenException){
+        return errorResponse(HttpStatus.UNAUTHORIZED, invalidTokenException.getMessage());
+    }
+
+    @ExceptionHandler(AuthenticationException.class)
+    public ResponseEntity<ErrorResponseDTO> authenticationHandler(AuthenticationException authenticationException){
+        return errorResponse(HttpStatus.UNAUTHORIZED, "Unauthorized: a valid token is required.");
+    }
+
+    // Spring MVC exceptions keep their own status, anything else is an unexpected failure
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponseDTO> unexpectedHandler(Exception exception){
+        if (exception instanceof ErrorResponse errorResponse) {
+            HttpStatusCode status = errorResponse.getStatusCode();
+            return ResponseEntity.status(status)
+                    .body(ErrorResponseDTO.of(HttpStatus.valueOf(status.value()), errorResponse.getBody().getDetail()));
+        }
+
+        log.error("Unexpected error while handling a request", exception);
+        return errorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "An error occurred, try again later.");
+    }
+
+    public static ResponseEntity<ErrorResponseDTO> errorResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(ErrorResponseDTO.of(status, message));
+    }
+
+    // Same body for the security filters, which answer before any controller or advice runs
+    public static byte[] errorBody(ObjectMapper objectMapper, HttpStatus status, String message) {
+        try {
+            return objectMapper.writeValueAsBytes(ErrorResponseDTO.of(status, message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("The error body could not be serialized.", e);
+        }
+    }
+
+    public static void writeErrorBody(HttpServletResponse response, HttpStatus status, byte[] body) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
     }
 }
@@ -0,0 +1,7 @@
+package com.example.user_service.exceptions;
+
+public class InvalidCursorException extends DomainException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
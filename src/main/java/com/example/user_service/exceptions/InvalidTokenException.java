@@ -0,0 +1,7 @@
+package com.example.user_service.exceptions;
+
+public class InvalidTokenException extends DomainException {
+    public InvalidTokenException(String message) {
+        super(message);
+    }
+}
@@ -1,7 +1,36 @@
 package com.example.user_service.exceptions;
 
-public class NoUsersFoundException extends Exception {
+public class NoUsersFoundException extends DomainException {
+
+    private final String field;
+    private final Object value;
+
     public NoUsersFoundException(String message) {
         super(message);
+        this.field = null;
+        this.value = null;
+    }
+
+    private NoUsersFoundException(String field, Object value) {
+        super(null);
+        this.field = field;
+        this.value = value;
+    }
+
+    // The message is only built if someone reads it, a miss by itself allocates no string
+    public static NoUsersFoundException forId(Long id) {
+        return new NoUsersFoundException("ID", id);
+    }
+
+    public static NoUsersFoundException forEmail(String email) {
+        return new NoUsersFoundException("Email", email);
+    }
+
+    @Override
+    public String getMessage() {
+        if (field == null) {
+            return super.getMessage();
+        }
+        return "User with " + field + " " + value + " not found.";
     }
 }
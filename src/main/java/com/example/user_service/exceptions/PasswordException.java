@@ -1,6 +1,6 @@
 package com.example.user_service.exceptions;
 
-public class PasswordException extends Exception {
+public class PasswordException extends DomainException {
     public PasswordException(String message) {
         super(message);
     }
@@ -0,0 +1,9 @@
+package com.example.user_service.exceptions;
+
+// Unchecked because it is thrown from PasswordEncoder, which cannot declare checked exceptions.
+// Stackless like the domain exceptions, it is thrown the most exactly when the server is overloaded.
+public class PasswordHashingRejectedException extends RuntimeException {
+    public PasswordHashingRejectedException(String message) {
+        super(message, null, false, false);
+    }
+}
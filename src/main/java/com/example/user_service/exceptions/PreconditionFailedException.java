@@ -0,0 +1,8 @@
+package com.example.user_service.exceptions;
+
+// The If-Match header names a version of the user that is no longer the current one
+public class PreconditionFailedException extends DomainException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,6 @@
 package com.example.user_service.exceptions;
 
-public class RoleException extends Exception {
+public class RoleException extends DomainException {
     public RoleException(String message) {
         super(message);
     }
@@ -1,6 +1,6 @@
 package com.example.user_service.exceptions;
 
-public class UserNameException extends Exception {
+public class UserNameException extends DomainException {
     public UserNameException(String message) {
         super(message);
     }
@@ -0,0 +1,8 @@
+package com.example.user_service.exceptions;
+
+// The user changed between reading and writing it, the client reads it again and retries
+public class UserVersionConflictException extends DomainException {
+    public UserVersionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.user_service.models;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// A message already converted to its AMQP body, written in the same transaction as the user change
+// and deleted once the broker confirms it
+@Entity
+@Table(indexes = @Index(name = "idx_outbox_next_attempt", columnList = "nextAttemptAt, id"))
+public class OutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+    @SequenceGenerator(name = "outbox_seq", sequenceName = "outbox_seq", allocationSize = 50)
+    private Long id;
+
+    private String exchange, routingKey, contentType, typeId;
+
+    @Column(length = 8192)
+    private byte[] body;
+
+    private Instant createdAt;
+    private Instant nextAttemptAt;
+    private int attempts = 0;
+
+    public OutboxMessage() { }
+
+    public OutboxMessage(String exchange, String routingKey, byte[] body, String contentType, String typeId) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.body = body;
+        this.contentType = contentType;
+        this.typeId = typeId;
+        this.createdAt = Instant.now();
+        this.nextAttemptAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getTypeId() {
+        return typeId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
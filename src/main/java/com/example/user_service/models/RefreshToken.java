@@ -0,0 +1,84 @@
+package com.example.user_service.models;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// One refresh token, stored as its SHA-256. Each refresh consumes the token and issues the next one of the
+// same family, so presenting an already used token means it was stolen and the whole family is revoked.
+// It also remembers the access token issued with it, which is revoked together with the family.
+@Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(name = "uk_refresh_token_hash", columnNames = "tokenHash"),
+        indexes = {
+                @Index(name = "idx_refresh_token_family", columnList = "familyId"),
+                @Index(name = "idx_refresh_token_user", columnList = "userId"),
+                @Index(name = "idx_refresh_token_expires", columnList = "expiresAt")
+        }
+)
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_token_seq")
+    @SequenceGenerator(name = "refresh_token_seq", sequenceName = "refresh_token_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(length = 64, nullable = false)
+    private String tokenHash;
+
+    @Column(length = 36, nullable = false)
+    private String familyId;
+
+    private Long userId;
+
+    private Instant expiresAt;
+    // Set when the token is exchanged, a used token is kept until it expires to detect its reuse
+    private Instant usedAt;
+
+    @Column(length = 36)
+    private String accessJti;
+    private Instant accessExpiresAt;
+
+    public RefreshToken() { }
+
+    public RefreshToken(String tokenHash, String familyId, Long userId, Instant expiresAt, String accessJti, Instant accessExpiresAt) {
+        this.tokenHash = tokenHash;
+        this.familyId = familyId;
+        this.userId = userId;
+        this.expiresAt = expiresAt;
+        this.accessJti = accessJti;
+        this.accessExpiresAt = accessExpiresAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public Instant getUsedAt() {
+        return usedAt;
+    }
+
+    public String getAccessJti() {
+        return accessJti;
+    }
+
+    public Instant getAccessExpiresAt() {
+        return accessExpiresAt;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.user_service.models;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// An access token cut off before it expires, only kept until then
+@Entity
+@Table(indexes = @Index(name = "idx_revoked_token_expires", columnList = "expiresAt"))
+public class RevokedToken {
+
+    @Id
+    @Column(length = 36)
+    private String jti;
+
+    private Instant expiresAt;
+
+    public RevokedToken() { }
+
+    public RevokedToken(String jti, Instant expiresAt) {
+        this.jti = jti;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -2,11 +2,32 @@ package com.example.user_service.models;
 
 import jakarta.persistence.*;
 
+import java.time.Instant;
+import java.util.Locale;
+
 @Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(name = UserEntity.EMAIL_CONSTRAINT, columnNames = "email"),
+        indexes = {
+                @Index(name = "idx_user_verification_token", columnList = "verificationTokenHash"),
+                @Index(name = "idx_user_verification_expires", columnList = "verificationTokenExpiresAt"),
+                @Index(name = "idx_user_verified_created", columnList = "isVerified, createdAt"),
+                // Admin search: one per sort order, each serves a role and verification group already sorted
+                @Index(name = "idx_user_search_id", columnList = "role, isVerified, id"),
+                @Index(name = "idx_user_search_username", columnList = "role, isVerified, usernameLower, id"),
+                @Index(name = "idx_user_search_email", columnList = "role, isVerified, emailLower, id")
+        }
+)
 public class UserEntity {
 
+    // The unique index on email, registration relies on it instead of looking the email up first
+    public static final String EMAIL_CONSTRAINT = "uk_user_email";
+
+
+    // Pooled sequence ids let Hibernate batch inserts, which IDENTITY columns prevent
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_seq", allocationSize = 50)
     private Long id;
 
     @Enumerated(EnumType.STRING)
@@ -14,18 +35,42 @@ public class UserEntity {
 
     private String email, username, password;
 
+    // Lower case copies for the case insensitive prefix search, kept in sync by the setters and the username update
+    private String emailLower, usernameLower;
+
     private boolean isVerified = false;
-    private String verificationToken;
+    // Only the SHA-256 of the emailed token is kept, together with its expiration
+    @Column(length = 64)
+    private String verificationTokenHash;
+    private Instant verificationTokenExpiresAt;
+
+    private Instant createdAt;
+
+    // Incremented by every change to the user data, it is the ETag of the user and guards concurrent updates.
+    // The targeted JPQL updates bypass Hibernate, so they increment it themselves.
+    @Version
+    private long version;
 
     public UserEntity() { }
 
     public UserEntity(String email, String username, String password, RoleType role) {
-        this.email = email;
-        this.username = username;
+        setEmail(email);
+        setUsername(username);
         this.password = password;
         this.role = role;
     }
 
+    public static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    @PrePersist
+    void onCreate() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+    }
+
     public Long getId() {
         return id;
     }
@@ -36,6 +81,7 @@ public class UserEntity {
 
     public void setEmail(String email) {
         this.email = email;
+        this.emailLower = lower(email);
     }
 
     public String getUsername() {
@@ -44,6 +90,7 @@ public class UserEntity {
 
     public void setUsername(String username) {
         this.username = username;
+        this.usernameLower = lower(username);
     }
 
     public String getPassword() {
@@ -70,11 +117,24 @@ public class UserEntity {
         isVerified = verified;
     }
 
-    public String getVerificationToken() {
-        return verificationToken;
+    public String getVerificationTokenHash() {
+        return verificationTokenHash;
+    }
+
+    public Instant getVerificationTokenExpiresAt() {
+        return verificationTokenExpiresAt;
+    }
+
+    public void setVerificationToken(String verificationTokenHash, Instant verificationTokenExpiresAt) {
+        this.verificationTokenHash = verificationTokenHash;
+        this.verificationTokenExpiresAt = verificationTokenExpiresAt;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
     }
 
-    public void setVerificationToken(String verificationToken) {
-        this.verificationToken = verificationToken;
+    public long getVersion() {
+        return version;
     }
 }
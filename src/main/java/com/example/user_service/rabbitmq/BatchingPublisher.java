@@ -0,0 +1,157 @@
+package com.example.user_service.rabbitmq;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Buffers messages in memory and flushes them when a batch is full or the linger time passes.
+// Each flusher thread sends its batch back to back on one channel and the correlated confirms
+// complete the per message futures, so several batches are in flight over the cached channels.
+@Component
+@ConditionalOnProperty(name = "rabbitmq.publisher.batching.enabled", havingValue = "true")
+public class BatchingPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final long confirmTimeout;
+    private final int flushers;
+    private final ThreadFactory threadFactory;
+
+    private final BlockingQueue<Pending> queue;
+    private final List<Thread> flusherThreads = new ArrayList<>();
+    private volatile boolean running;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+
+    public BatchingPublisher(RabbitTemplate rabbitTemplate,
+                             MeterRegistry meterRegistry,
+                             @Qualifier("amqpPublisherThreadFactory") ThreadFactory threadFactory,
+                             @Value("${rabbitmq.publisher.batching.batch-size:100}") int batchSize,
+                             @Value("${rabbitmq.publisher.batching.linger:5}") long lingerMillis,
+                             @Value("${rabbitmq.publisher.batching.capacity:10000}") int capacity,
+                             @Value("${rabbitmq.publisher.batching.flushers:4}") int flushers,
+                             @Value("${rabbitmq.publisher.batching.confirm-timeout:5000}") long confirmTimeout) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.confirmTimeout = confirmTimeout;
+        this.flushers = flushers;
+        this.threadFactory = threadFactory;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        this.batchSizeSummary = DistributionSummary.builder("rabbitmq.publisher.batch.size").register(meterRegistry);
+        this.flushTimer = Timer.builder("rabbitmq.publisher.flush").register(meterRegistry);
+        Gauge.builder("rabbitmq.publisher.buffered", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < flushers; i++) {
+            Thread thread = threadFactory.newThread(this::flushLoop);
+            thread.start();
+            flusherThreads.add(thread);
+        }
+    }
+
+    // Stops taking new messages and lets the flushers drain what is already buffered
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        for (Thread thread : flusherThreads) {
+            thread.join(confirmTimeout);
+        }
+    }
+
+    // The future completes when the broker acks the message, it fails on a nack, a timeout or a full buffer
+    public CompletableFuture<Void> submit(String exchange, String routingKey, Message message) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!running || !queue.offer(new Pending(exchange, routingKey, message, future))) {
+            future.completeExceptionally(new AmqpException("The publisher buffer is full."));
+        }
+        return future;
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(List<Pending> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        batchSizeSummary.record(batch.size());
+        flushTimer.record(() -> {
+            try {
+                rabbitTemplate.invoke(operations -> {
+                    for (Pending pending : batch) {
+                        CorrelationData correlationData = new CorrelationData();
+                        correlationData.getFuture()
+                                .orTimeout(confirmTimeout, TimeUnit.MILLISECONDS)
+                                .whenComplete((confirm, error) -> {
+                                    if (error != null) {
+                                        pending.future().completeExceptionally(error);
+                                    } else if (confirm.isAck()) {
+                                        pending.future().complete(null);
+                                    } else {
+                                        pending.future().completeExceptionally(new AmqpException("Message nacked: " + confirm.getReason()));
+                                    }
+                                });
+                        operations.send(pending.exchange(), pending.routingKey(), pending.message(), correlationData);
+                    }
+                    return null;
+                });
+            } catch (AmqpException e) {
+                batch.forEach(pending -> pending.future().completeExceptionally(e));
+            }
+        });
+    }
+
+    private record Pending(String exchange, String routingKey, Message message, CompletableFuture<Void> future) { }
+}
@@ -0,0 +1,166 @@
+package com.example.user_service.rabbitmq;
+
+import com.example.user_service.models.OutboxMessage;
+import com.example.user_service.repositories.OutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drains the outbox in batches, a message is only deleted after the broker confirms it (at least once delivery).
+// A batch is claimed first: a short transaction locks the rows and moves their next attempt past a lease,
+// so other instances leave them alone while they are published. If this instance dies, they are ready again
+// once the lease is over.
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxRepository outboxRepository;
+    private final RabbitMQProducer2 rabbitMQProducer2;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+    private final long confirmTimeout;
+    private final long maxBackoff;
+    private final long lease;
+
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    public OutboxRelay(OutboxRepository outboxRepository,
+                       RabbitMQProducer2 rabbitMQProducer2,
+                       TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${outbox.relay.batch-size:100}") int batchSize,
+                       @Value("${outbox.relay.confirm-timeout:5000}") long confirmTimeout,
+                       @Value("${outbox.relay.max-backoff:60000}") long maxBackoff,
+                       @Value("${outbox.relay.lease:60000}") long lease) {
+        this.outboxRepository = outboxRepository;
+        this.rabbitMQProducer2 = rabbitMQProducer2;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.confirmTimeout = confirmTimeout;
+        this.maxBackoff = maxBackoff;
+        // Publishing waits at most the confirm timeout, the lease must outlast it
+        this.lease = Math.max(lease, confirmTimeout * 2);
+
+        this.publishedCounter = Counter.builder("outbox.published").register(meterRegistry);
+        this.failedCounter = Counter.builder("outbox.failed").register(meterRegistry);
+        this.batchTimer = Timer.builder("outbox.relay.batch").register(meterRegistry);
+        Gauge.builder("outbox.pending", pending, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("outbox.lag", lagMillis, AtomicLong::get)
+                .baseUnit("milliseconds")
+                .description("Age of the oldest message waiting in the outbox")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval:1000}")
+    public void relay() {
+        List<OutboxMessage> batch;
+        do {
+            batch = claimBatch();
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<OutboxMessage> finalBatch = batch;
+            if (!batchTimer.record(() -> publishBatch(finalBatch))) {
+                break; // The broker is failing, the rest waits for the next run
+            }
+        } while (batch.size() == batchSize);
+
+        pending.set(outboxRepository.count());
+        Instant oldest = outboxRepository.findOldestCreatedAt();
+        lagMillis.set(oldest == null ? 0 : Duration.between(oldest, Instant.now()).toMillis());
+    }
+
+    private List<OutboxMessage> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            List<OutboxMessage> claimed = outboxRepository.findReadyToPublish(now, Limit.of(batchSize));
+            // Flushed by the commit, which also releases the row locks
+            claimed.forEach(message -> message.setNextAttemptAt(now.plusMillis(lease)));
+            return claimed;
+        });
+    }
+
+    // Sends the whole batch before waiting for any confirm, so the broker round trips overlap
+    private boolean publishBatch(List<OutboxMessage> batch) {
+        Map<OutboxMessage, CompletableFuture<Void>> sent = new LinkedHashMap<>();
+        List<OutboxMessage> failed = new ArrayList<>();
+
+        for (OutboxMessage message : batch) {
+            try {
+                sent.put(message, rabbitMQProducer2.publish(message));
+            } catch (AmqpException e) {
+                log.warn("Could not publish outbox message {}: {}", message.getId(), e.getMessage());
+                failed.add(message);
+            }
+        }
+
+        List<Long> confirmed = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeout);
+        for (Map.Entry<OutboxMessage, CompletableFuture<Void>> entry : sent.entrySet()) {
+            if (isConfirmed(entry.getValue(), deadline)) {
+                confirmed.add(entry.getKey().getId());
+            } else {
+                failed.add(entry.getKey());
+            }
+        }
+
+        if (!confirmed.isEmpty()) {
+            outboxRepository.deleteAllByIdInBatch(confirmed);
+            publishedCounter.increment(confirmed.size());
+        }
+
+        if (!failed.isEmpty()) {
+            Instant now = Instant.now();
+            for (OutboxMessage message : failed) {
+                message.setAttempts(message.getAttempts() + 1);
+                message.setNextAttemptAt(now.plusMillis(backoff(message.getAttempts())));
+            }
+            outboxRepository.saveAll(failed);
+            failedCounter.increment(failed.size());
+        }
+
+        return failed.isEmpty();
+    }
+
+    private static boolean isConfirmed(CompletableFuture<Void> confirm, long deadline) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            confirm.get(remaining, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private long backoff(int attempts) {
+        return Math.min(maxBackoff, 1000L << Math.min(attempts, 16));
+    }
+}
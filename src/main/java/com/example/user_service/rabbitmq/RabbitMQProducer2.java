@@ -1,32 +1,82 @@
 package com.example.user_service.rabbitmq;
 
-import com.example.user_service.dtos.VerificationEmailDTO;
+import com.example.user_service.models.OutboxMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class RabbitMQProducer2 {
 
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
-    @Autowired
-    @Qualifier("welcomeEmailExchange")
-    private TopicExchange welcomeEmailExchange;
+    // Only present when rabbitmq.publisher.batching.enabled is true
+    @Autowired(required = false)
+    private BatchingPublisher batchingPublisher;
 
     @Autowired
-    @Qualifier("verificationEmailExchange")
-    private TopicExchange verificationEmailExchange;
+    private MeterRegistry meterRegistry;
+
+
+    // Sends an already converted outbox message, the returned future completes when the broker confirms it
+    public CompletableFuture<Void> publish(OutboxMessage outboxMessage) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<Void> confirmed;
+
+        try {
+            confirmed = send(outboxMessage);
+        } catch (RuntimeException e) {
+            stopPublishTimer(sample, outboxMessage, "error");
+            throw e;
+        }
 
+        // Measured from the send until the broker confirm, tagged with how it ended
+        return confirmed.whenComplete((ignored, error) ->
+                stopPublishTimer(sample, outboxMessage, error == null ? "ack" : "failed"));
+    }
+
+    private CompletableFuture<Void> send(OutboxMessage outboxMessage) {
+        Message message = toMessage(outboxMessage);
+
+        if (batchingPublisher != null) {
+            return batchingPublisher.submit(outboxMessage.getExchange(), outboxMessage.getRoutingKey(), message);
+        }
+
+        CorrelationData correlationData = new CorrelationData(String.valueOf(outboxMessage.getId()));
+        rabbitTemplate.send(outboxMessage.getExchange(), outboxMessage.getRoutingKey(), message, correlationData);
+        return correlationData.getFuture().thenAccept(confirm -> {
+            if (!confirm.isAck()) {
+                throw new AmqpException("Message nacked: " + confirm.getReason());
+            }
+        });
+    }
 
-    public void sendWelcomeEmail(String email) {
-        rabbitTemplate.convertAndSend(welcomeEmailExchange.getName(), "welcome.email", email);
+    private void stopPublishTimer(Timer.Sample sample, OutboxMessage outboxMessage, String result) {
+        sample.stop(Timer.builder("rabbitmq.publish")
+                .tag("routing.key", outboxMessage.getRoutingKey())
+                .tag("result", result)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry));
     }
 
-    public void sendVerificationEmail(VerificationEmailDTO verificationEmailDTO) {
-        rabbitTemplate.convertAndSend(verificationEmailExchange.getName(), "verification.email", verificationEmailDTO);
+    private static Message toMessage(OutboxMessage outboxMessage) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(outboxMessage.getContentType());
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        if (outboxMessage.getTypeId() != null) {
+            properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, outboxMessage.getTypeId());
+        }
+        return new Message(outboxMessage.getBody(), properties);
     }
 }
@@ -0,0 +1,29 @@
+package com.example.user_service.repositories;
+
+import com.example.user_service.models.OutboxMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // Locks the batch for the claiming transaction. Rows locked by another relay are skipped (lock timeout -2),
+    // so concurrent instances claim different batches instead of waiting for each other.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM OutboxMessage o WHERE o.nextAttemptAt <= :now ORDER BY o.nextAttemptAt, o.id")
+    List<OutboxMessage> findReadyToPublish(@Param("now") Instant now, Limit limit);
+
+    @Query("SELECT MIN(o.createdAt) FROM OutboxMessage o")
+    Instant findOldestCreatedAt();
+}
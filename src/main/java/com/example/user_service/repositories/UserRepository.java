@@ -1,31 +1,205 @@
 package com.example.user_service.repositories;
 
+import com.example.user_service.config.AuthenticatedUser;
+import com.example.user_service.dtos.UserAllDataDTO;
+import com.example.user_service.dtos.UserCountDTO;
+import com.example.user_service.dtos.UserCredentialsDTO;
+import com.example.user_service.dtos.UserDTO;
+import com.example.user_service.dtos.UserStatusDTO;
 import com.example.user_service.models.RoleType;
 import com.example.user_service.models.UserEntity;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface UserRepository extends JpaRepository<UserEntity, Long> {
 
     Optional<UserEntity> findByEmail(String email);
 
-    @Query("SELECT DISTINCT u.role FROM UserEntity u")
-    List<RoleType> findAllRoles();
+    @Query("SELECT new com.example.user_service.config.AuthenticatedUser(u.id, u.email, u.password, u.role, u.isVerified) " +
+            "FROM UserEntity u WHERE u.email = :email")
+    Optional<AuthenticatedUser> findAuthenticatedUserByEmail(@Param("email") String email);
+
+    @Query("SELECT new com.example.user_service.config.AuthenticatedUser(u.id, u.email, u.password, u.role, u.isVerified) " +
+            "FROM UserEntity u WHERE u.id = :id")
+    Optional<AuthenticatedUser> findAuthenticatedUserById(@Param("id") Long id);
+
+    // Keyset page: seeks past the last id of the previous page using the primary key index
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u WHERE u.id > :afterId ORDER BY u.id")
+    List<UserAllDataDTO> findPageAfterId(@Param("afterId") Long afterId, Limit limit);
+
+    // Forward only cursor for exports, must be consumed inside a transaction and closed
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u ORDER BY u.id")
+    Stream<UserAllDataDTO> streamAllUsers();
+
+    // Read projections: they select only the returned columns and never enter the persistence context
+    @Query("SELECT new com.example.user_service.dtos.UserDTO(u.id, u.username, u.email, u.version) FROM UserEntity u WHERE u.id = :id")
+    Optional<UserDTO> findUserDTOById(@Param("id") Long id);
+
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role, u.version) " +
+            "FROM UserEntity u WHERE u.id = :id")
+    Optional<UserAllDataDTO> findUserAllDataDTOById(@Param("id") Long id);
+
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u ORDER BY u.id")
+    List<UserAllDataDTO> findAllUserAllDataDTOs();
+
+    @Query("SELECT u.email FROM UserEntity u WHERE u.id = :id")
+    Optional<String> findEmailById(@Param("id") Long id);
+
+    @Query("SELECT u.version FROM UserEntity u WHERE u.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("SELECT new com.example.user_service.dtos.UserCredentialsDTO(u.id, u.username, u.email, u.password, u.version) " +
+            "FROM UserEntity u WHERE u.id = :id")
+    Optional<UserCredentialsDTO> findCredentialsById(@Param("id") Long id);
+
+    // Partial updates: each one writes only the columns that changed, without loading the entity.
+    // They only apply to the version that was read, 0 rows means the user changed or was deleted in between.
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.username = :username, u.usernameLower = :usernameLower, u.version = u.version + 1 " +
+            "WHERE u.id = :id AND u.version = :version")
+    int updateUsernameById(@Param("id") Long id, @Param("version") long version, @Param("username") String username,
+                           @Param("usernameLower") String usernameLower);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.password = :password, u.version = u.version + 1 WHERE u.id = :id AND u.version = :version")
+    int updatePasswordById(@Param("id") Long id, @Param("version") long version, @Param("password") String password);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.username = :username, u.usernameLower = :usernameLower, u.password = :password, " +
+            "u.version = u.version + 1 WHERE u.id = :id AND u.version = :version")
+    int updateUsernameAndPasswordById(@Param("id") Long id, @Param("version") long version, @Param("username") String username,
+                                      @Param("usernameLower") String usernameLower, @Param("password") String password);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.role = :role, u.version = u.version + 1 WHERE u.id = :id AND u.version = :version")
+    int updateRoleById(@Param("id") Long id, @Param("version") long version, @Param("role") RoleType role);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.isVerified = :verified, u.version = u.version + 1 WHERE u.id = :id AND u.version = :version")
+    int updateVerifiedById(@Param("id") Long id, @Param("version") long version, @Param("verified") boolean verified);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.role = :role, u.isVerified = :verified, u.version = u.version + 1 " +
+            "WHERE u.id = :id AND u.version = :version")
+    int updateRoleAndVerifiedById(@Param("id") Long id, @Param("version") long version, @Param("role") RoleType role, @Param("verified") boolean verified);
+
+    // Admin search, see UserSearchService: each query reads one role and verification group, so the matching
+    // idx_user_search_* index returns the page already sorted and only the rows of the page are read.
+    // Role and isVerified are fixed, ordering by them too only lets the planner see the order matches the index.
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u WHERE u.role = :role AND u.isVerified = :verified AND u.id > :afterId " +
+            "ORDER BY u.role, u.isVerified, u.id")
+    List<UserAllDataDTO> searchGroupById(@Param("role") RoleType role, @Param("verified") boolean verified,
+                                         @Param("afterId") Long afterId, Limit limit);
+
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u WHERE u.role = :role AND u.isVerified = :verified " +
+            "AND u.usernameLower >= :from AND u.usernameLower < :to " +
+            "AND (u.usernameLower > :afterKey OR u.id > :afterId) " +
+            "ORDER BY u.role, u.isVerified, u.usernameLower, u.id")
+    List<UserAllDataDTO> searchGroupByUsername(@Param("role") RoleType role, @Param("verified") boolean verified,
+                                               @Param("from") String from, @Param("to") String to,
+                                               @Param("afterKey") String afterKey, @Param("afterId") Long afterId, Limit limit);
+
+    // The username prefix is checked with LOCATE, so it filters the rows of the email index instead of competing with it
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u WHERE u.role = :role AND u.isVerified = :verified " +
+            "AND u.emailLower >= :from AND u.emailLower < :to " +
+            "AND (u.emailLower > :afterKey OR u.id > :afterId) " +
+            "AND (:usernamePrefix = '' OR LOCATE(:usernamePrefix, u.usernameLower) = 1) " +
+            "ORDER BY u.role, u.isVerified, u.emailLower, u.id")
+    List<UserAllDataDTO> searchGroupByEmail(@Param("role") RoleType role, @Param("verified") boolean verified,
+                                            @Param("from") String from, @Param("to") String to,
+                                            @Param("afterKey") String afterKey, @Param("afterId") Long afterId,
+                                            @Param("usernamePrefix") String usernamePrefix, Limit limit);
+
+    // Batch lookups, one chunk of keys per query over the primary key or the unique email index
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u WHERE u.id IN :ids")
+    List<UserAllDataDTO> findUserAllDataDTOsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new com.example.user_service.dtos.UserAllDataDTO(u.id, u.username, u.email, u.role) " +
+            "FROM UserEntity u WHERE u.email IN :emails")
+    List<UserAllDataDTO> findUserAllDataDTOsByEmails(@Param("emails") Collection<String> emails);
+
+    @Query("SELECT u.email FROM UserEntity u WHERE u.email IN :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    // A full grouped scan, only for seeding and reconciling UserStatistics
+    @Query("SELECT new com.example.user_service.dtos.UserCountDTO(u.role, u.isVerified, COUNT(u)) " +
+            "FROM UserEntity u GROUP BY u.role, u.isVerified")
+    List<UserCountDTO> countByRoleAndVerified();
+
+    @Query("SELECT new com.example.user_service.dtos.UserStatusDTO(u.id, u.username, u.email, u.role, u.isVerified, u.version) " +
+            "FROM UserEntity u WHERE u.id = :id")
+    Optional<UserStatusDTO> findUserStatusById(@Param("id") Long id);
+
+    @Query("SELECT new com.example.user_service.dtos.UserStatusDTO(u.id, u.username, u.email, u.role, u.isVerified, u.version) " +
+            "FROM UserEntity u WHERE u.verificationTokenHash = :tokenHash")
+    Optional<UserStatusDTO> findUserStatusByVerificationTokenHash(@Param("tokenHash") String tokenHash);
+
+    // Verifies and consumes the token in one statement: it expires at once, so the link only works one time.
+    // Only an unverified user matches, so an updated row was unverified before.
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.isVerified = true, u.verificationTokenExpiresAt = :now, u.version = u.version + 1 " +
+            "WHERE u.verificationTokenHash = :tokenHash AND u.verificationTokenExpiresAt > :now AND u.isVerified = false")
+    int verifyByTokenHash(@Param("tokenHash") String tokenHash, @Param("now") Instant now);
+
+    // Replaces the token of an unverified user whose token expired, was swept or was issued before reissueBefore
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.verificationTokenHash = :tokenHash, u.verificationTokenExpiresAt = :expiresAt " +
+            "WHERE u.email = :email AND u.isVerified = false " +
+            "AND (u.verificationTokenExpiresAt IS NULL OR u.verificationTokenExpiresAt <= :reissueBefore)")
+    int reissueVerificationToken(@Param("email") String email, @Param("tokenHash") String tokenHash,
+                                 @Param("expiresAt") Instant expiresAt, @Param("reissueBefore") Instant reissueBefore);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserEntity u SET u.verificationTokenHash = null, u.verificationTokenExpiresAt = null " +
+            "WHERE u.verificationTokenExpiresAt <= :now")
+    int clearExpiredVerificationTokens(@Param("now") Instant now);
 
-    UserEntity findByVerificationToken(String verificationToken);
+    @Query("SELECT COUNT(u) FROM UserEntity u WHERE u.isVerified = false AND u.createdAt < :cutoff")
+    long countUnverifiedUsersCreatedBefore(@Param("cutoff") Instant cutoff);
 
-    @Query("SELECT COUNT(u) FROM UserEntity u WHERE u.isVerified = false")
-    long countUnverifiedUsers();
+    // Uses the (isVerified, createdAt) index, so each chunk only touches the rows it deletes
+    @Query("SELECT u.id FROM UserEntity u WHERE u.isVerified = false AND u.createdAt < :cutoff ORDER BY u.createdAt")
+    List<Long> findUnverifiedIdsCreatedBefore(@Param("cutoff") Instant cutoff, Limit limit);
 
     @Modifying
     @Transactional
-    @Query("DELETE FROM UserEntity u WHERE u.isVerified = false")
-    void deleteUnverifiedUsers();
+    @Query("DELETE FROM UserEntity u WHERE u.id IN :ids AND u.isVerified = false AND u.role = :role")
+    int deleteUnverifiedUsersByIdsAndRole(@Param("ids") List<Long> ids, @Param("role") RoleType role);
 }
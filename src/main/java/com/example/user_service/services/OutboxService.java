@@ -0,0 +1,59 @@
+package com.example.user_service.services;
+
+import com.example.user_service.dtos.VerificationEmailDTO;
+import com.example.user_service.models.OutboxMessage;
+import com.example.user_service.repositories.OutboxRepository;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static com.example.user_service.config.RabbitMQConfig.*;
+
+// Emails are written to the outbox inside the caller's transaction and published later by the OutboxRelay
+@Service
+public class OutboxService {
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private Jackson2JsonMessageConverter messageConverter;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueVerificationEmail(VerificationEmailDTO verificationEmailDTO) {
+        enqueue(VERIFICATION_EMAIL_EXCHANGE, VERIFICATION_EMAIL_ROUTING_KEY, verificationEmailDTO);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueVerificationEmails(List<VerificationEmailDTO> verificationEmails) {
+        List<OutboxMessage> messages = verificationEmails.stream()
+                .map(email -> toOutboxMessage(VERIFICATION_EMAIL_EXCHANGE, VERIFICATION_EMAIL_ROUTING_KEY, email))
+                .toList();
+        outboxRepository.saveAll(messages);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueWelcomeEmail(String email) {
+        enqueue(EMAIL_EXCHANGE, EMAIL_ROUTING_KEY, email);
+    }
+
+    // Converts the payload now, so the relay sends exactly what convertAndSend would have sent
+    private void enqueue(String exchange, String routingKey, Object payload) {
+        outboxRepository.save(toOutboxMessage(exchange, routingKey, payload));
+    }
+
+    private OutboxMessage toOutboxMessage(String exchange, String routingKey, Object payload) {
+        Message message = messageConverter.toMessage(payload, new MessageProperties());
+        MessageProperties properties = message.getMessageProperties();
+        String typeId = (String) properties.getHeaders().get(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+
+        return new OutboxMessage(exchange, routingKey, message.getBody(), properties.getContentType(), typeId);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.user_service.services;
+
+import com.example.user_service.config.AuthenticatedUser;
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.dtos.TokenResponseDTO;
+import com.example.user_service.exceptions.InvalidTokenException;
+import com.example.user_service.models.RefreshToken;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.repositories.RefreshTokenRepository;
+import com.example.user_service.repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static com.example.user_service.utils.TokenUtils.sha256Hex;
+
+// Issues short lived access tokens together with a rotating refresh token. Every refresh consumes the
+// presented token and issues the next pair of the same family, a consumed token presented again revokes
+// the family and the access tokens it issued.
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${jwt.refresh.expiration:1209600000}")
+    private long refreshExpiration;
+
+    public TokenResponseDTO issue(Long userId, String email, RoleType role) {
+        return issue(userId, email, role, UUID.randomUUID().toString());
+    }
+
+    public TokenResponseDTO refresh(String refreshToken) throws InvalidTokenException {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            throw new InvalidTokenException("A refresh token is required.");
+        }
+
+        RefreshToken stored = refreshTokenRepository.findByTokenHash(sha256Hex(refreshToken)).orElse(null);
+        Instant now = Instant.now();
+        if (stored == null || !stored.getExpiresAt().isAfter(now)) {
+            countRefresh("invalid");
+            throw new InvalidTokenException("Invalid or expired refresh token.");
+        }
+
+        // Used already, or used right now by a concurrent request: someone else holds a copy of this token
+        if (stored.getUsedAt() != null || refreshTokenRepository.markUsed(stored.getId(), now) == 0) {
+            revokeFamily(stored.getFamilyId());
+            countRefresh("reused");
+            log.warn("Refresh token reuse detected for user {}, its token family was revoked", stored.getUserId());
+            throw new InvalidTokenException("Invalid or expired refresh token.");
+        }
+
+        // Read again instead of trusting the old claims, a role change or a lost verification applies here
+        AuthenticatedUser user = userRepository.findAuthenticatedUserById(stored.getUserId()).orElse(null);
+        if (user == null || !user.verified()) {
+            revokeFamily(stored.getFamilyId());
+            countRefresh("invalid");
+            throw new InvalidTokenException("Invalid or expired refresh token.");
+        }
+
+        countRefresh("success");
+        return issue(user.id(), user.email(), user.role(), stored.getFamilyId());
+    }
+
+    // The refresh token family ends, the access token of the request is revoked for the rest of its lifetime
+    public void logout(String refreshToken, String accessJti, Instant accessExpiresAt) {
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            refreshTokenRepository.findByTokenHash(sha256Hex(refreshToken))
+                    .ifPresent(stored -> revokeFamily(stored.getFamilyId()));
+        }
+        if (accessJti != null && accessExpiresAt != null) {
+            tokenRevocationService.revoke(accessJti, accessExpiresAt);
+        }
+    }
+
+    // After a password, role or verification change every session of the user has to log in again
+    public void revokeAllForUser(Long userId) {
+        List<RefreshToken> tokens = refreshTokenRepository.findByUserId(userId);
+        revokeAccessTokens(tokens);
+        refreshTokenRepository.deleteByUser(userId);
+    }
+
+    public void revokeFamily(String familyId) {
+        List<RefreshToken> tokens = refreshTokenRepository.findByFamilyId(familyId);
+        revokeAccessTokens(tokens);
+        refreshTokenRepository.deleteByFamily(familyId);
+    }
+
+    // Consumed tokens are kept until they expire, that is how a reuse is still recognized
+    @Scheduled(fixedDelayString = "${jwt.refresh.sweep-interval:3600000}", initialDelayString = "${jwt.refresh.sweep-interval:3600000}")
+    public void deleteExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(Instant.now());
+        if (deleted > 0) {
+            log.info("Deleted {} expired refresh tokens", deleted);
+        }
+    }
+
+    private TokenResponseDTO issue(Long userId, String email, RoleType role, String familyId) {
+        String jti = UUID.randomUUID().toString();
+        // Taken before signing, the token's own expiration is at most a second earlier (it has second precision)
+        Instant accessExpiresAt = Instant.now().plusMillis(jwtUtils.getExpiration()).plusSeconds(1);
+        String accessToken = jwtUtils.createToken(email, userId, role, jti);
+
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        refreshTokenRepository.save(new RefreshToken(sha256Hex(refreshToken), familyId, userId,
+                Instant.now().plusMillis(refreshExpiration), jti, accessExpiresAt));
+
+        return new TokenResponseDTO(accessToken, refreshToken, "Bearer", jwtUtils.getExpiration() / 1000);
+    }
+
+    // Only the access tokens that are still valid need to be on the revocation list
+    private void revokeAccessTokens(List<RefreshToken> tokens) {
+        for (RefreshToken token : tokens) {
+            if (token.getAccessJti() != null) {
+                tokenRevocationService.revoke(token.getAccessJti(), token.getAccessExpiresAt());
+            }
+        }
+    }
+
+    private void countRefresh(String result) {
+        Counter.builder("auth.refresh")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+}
@@ -1,38 +1,34 @@
 package com.example.user_service.services;
 
-import com.example.user_service.config.JwtUtils;
-import jakarta.servlet.http.HttpServletRequest;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.example.user_service.config.JwtPrincipal;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+// Reads the principal the JWT filter already verified, the token is never parsed again here
 @Service
 public class TokenDataServiceImpl {
 
-    @Autowired
-    private JwtUtils jwtUtils;
-
-    private String extraerToken(HttpServletRequest request){
-        return request.getHeader("Authorization").substring(7);
+    private JwtPrincipal getPrincipal(){
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof JwtPrincipal principal)) {
+            throw new IllegalStateException("The request is not authenticated with a token.");
+        }
+        return principal;
     }
 
     // Retrieves and returns email from the token
-    public String getEmail(HttpServletRequest request){
-        String token = extraerToken(request);
-        String email = jwtUtils.extractUsername(token);
-        return email;
+    public String getEmail(){
+        return getPrincipal().email();
     }
 
     // Retrieves and returns id from the token
-    public Long getId(HttpServletRequest request){
-        String token = extraerToken(request);
-        Long id = jwtUtils.extractUserId(token);
-        return id;
+    public Long getId(){
+        return getPrincipal().id();
     }
 
     // Retrieves and returns role from the token
-    public String getRole(HttpServletRequest request){
-        String token = extraerToken(request);
-        String role = jwtUtils.extractUserRole(token);
-        return role;
+    public String getRole(){
+        return getPrincipal().role();
     }
 }
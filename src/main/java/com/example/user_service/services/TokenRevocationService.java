@@ -0,0 +1,121 @@
+package com.example.user_service.services;
+
+import com.example.user_service.models.RevokedToken;
+import com.example.user_service.repositories.RevokedTokenRepository;
+import com.example.user_service.utils.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.example.user_service.utils.TransactionUtils.afterCommit;
+
+// Revoked access token ids. They are stored until the token expires and mirrored in a Bloom filter, so checking
+// a token that was not revoked, nearly every request, touches no database. Only a filter hit is confirmed with a
+// lookup. The filter is rebuilt from the table on a schedule, which drops expired ids and picks up the tokens
+// revoked by other instances.
+@Component
+public class TokenRevocationService {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final double falsePositiveRate;
+    private final int minCapacity;
+
+    private volatile BloomFilter filter;
+    // Revoked here since the last rebuild started, added again to the new filter in case the rebuild missed them
+    private volatile Set<String> recentlyRevoked = ConcurrentHashMap.newKeySet();
+    private final AtomicLong liveRevocations = new AtomicLong();
+
+    private final Counter revokedCounter;
+    private final Counter falsePositiveCounter;
+
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${jwt.revocation.false-positive-rate:0.01}") double falsePositiveRate,
+                                  @Value("${jwt.revocation.min-capacity:10000}") int minCapacity) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minCapacity = minCapacity;
+        this.filter = new BloomFilter(minCapacity, falsePositiveRate);
+
+        this.revokedCounter = Counter.builder("jwt.revocation.revoked").register(meterRegistry);
+        this.falsePositiveCounter = Counter.builder("jwt.revocation.false.positives")
+                .description("Filter hits for tokens that were not revoked, each one cost a database lookup")
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocation.live", liveRevocations, AtomicLong::get).register(meterRegistry);
+    }
+
+    public boolean isRevoked(String jti) {
+        if (!filter.mightContain(jti)) {
+            return false;
+        }
+        if (recentlyRevoked.contains(jti) || revokedTokenRepository.existsById(jti)) {
+            return true;
+        }
+        falsePositiveCounter.increment();
+        return false;
+    }
+
+    public void revoke(String jti, Instant expiresAt) {
+        if (jti == null || !expiresAt.isAfter(Instant.now())) {
+            return;
+        }
+        revokedTokenRepository.save(new RevokedToken(jti, expiresAt));
+        // Only once the row is visible: a rebuild between this save and the commit of the caller would read the
+        // table without it and replace recentlyRevoked, so an earlier update of the filter would be lost
+        afterCommit(() -> {
+            recentlyRevoked.add(jti);
+            filter.add(jti);
+            revokedCounter.increment();
+        });
+    }
+
+    // After the CommandLineRunners, like the other startup work that reads the database
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        rebuild();
+    }
+
+    // Sized from the live count, so the false positive rate holds however many tokens are revoked
+    @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-interval:30000}", initialDelayString = "${jwt.revocation.rebuild-interval:30000}")
+    public void rebuild() {
+        Instant now = Instant.now();
+        revokedTokenRepository.deleteExpired(now);
+
+        Set<String> revokedDuringRebuild = ConcurrentHashMap.newKeySet();
+        recentlyRevoked = revokedDuringRebuild;
+
+        BloomFilter rebuilt = transactionTemplate.execute(status -> {
+            long live = revokedTokenRepository.countLive(now);
+            liveRevocations.set(live);
+            BloomFilter next = new BloomFilter(Math.max(minCapacity, live * 2), falsePositiveRate);
+            try (Stream<String> jtis = revokedTokenRepository.streamLiveJtis(now)) {
+                Iterator<String> iterator = jtis.iterator();
+                while (iterator.hasNext()) {
+                    next.add(iterator.next());
+                }
+            }
+            return next;
+        });
+
+        revokedDuringRebuild.forEach(rebuilt::add);
+        filter = rebuilt;
+        // A revocation between the loop above and the swap only reached the old filter
+        revokedDuringRebuild.forEach(rebuilt::add);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.user_service.services;
+
+import com.example.user_service.config.AuthenticatedUserCache;
+import com.example.user_service.config.UserVersionCache;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Deletes users that never verified their email and are older than the retention age, in small
+// chunks with a pause between them so no delete holds locks for long
+@Component
+public class UnverifiedUserPurgeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(UnverifiedUserPurgeJob.class);
+
+    private final UserRepository userRepository;
+    private final AuthenticatedUserCache authenticatedUserCache;
+    private final UserVersionCache userVersionCache;
+    private final UserStatistics userStatistics;
+
+    private final Duration maxAge;
+    private final int chunkSize;
+    private final long pauseMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter purgedCounter;
+    private final Timer durationTimer;
+    private final AtomicLong backlog = new AtomicLong();
+
+    public UnverifiedUserPurgeJob(UserRepository userRepository,
+                                  AuthenticatedUserCache authenticatedUserCache,
+                                  UserVersionCache userVersionCache,
+                                  UserStatistics userStatistics,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${user.purge.max-age:7d}") Duration maxAge,
+                                  @Value("${user.purge.chunk-size:500}") int chunkSize,
+                                  @Value("${user.purge.pause:100}") long pauseMillis) {
+        this.userRepository = userRepository;
+        this.authenticatedUserCache = authenticatedUserCache;
+        this.userVersionCache = userVersionCache;
+        this.userStatistics = userStatistics;
+        this.maxAge = maxAge;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+
+        this.purgedCounter = Counter.builder("user.purge.deleted").register(meterRegistry);
+        this.durationTimer = Timer.builder("user.purge.duration").register(meterRegistry);
+        Gauge.builder("user.purge.backlog", backlog, AtomicLong::get)
+                .description("Unverified users older than the retention age left after the last run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${user.purge.interval:3600000}", initialDelayString = "${user.purge.interval:3600000}")
+    public void scheduledPurge() {
+        purge();
+    }
+
+    // Returns the number of deleted users, or 0 if another purge is already running
+    public long purge() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        long purged = 0;
+        try {
+            Instant cutoff = Instant.now().minus(maxAge);
+            List<Long> ids;
+            do {
+                ids = userRepository.findUnverifiedIdsCreatedBefore(cutoff, Limit.of(chunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                int deleted = 0;
+                // One delete per role, so the statistics learn exactly whose users went
+                for (RoleType role : RoleType.values()) {
+                    int roleDeleted = userRepository.deleteUnverifiedUsersByIdsAndRole(ids, role);
+                    userStatistics.recordDeleted(role, false, roleDeleted);
+                    deleted += roleDeleted;
+                }
+                userVersionCache.evictAll(ids);
+                purged += deleted;
+                purgedCounter.increment(deleted);
+                pause();
+            } while (ids.size() == chunkSize);
+
+            backlog.set(userRepository.countUnverifiedUsersCreatedBefore(cutoff));
+            if (purged > 0) {
+                authenticatedUserCache.clear();
+                log.info("Purged {} unverified users created before {}", purged, cutoff);
+            }
+            return purged;
+
+        } finally {
+            durationTimer.record(Duration.ofNanos(System.nanoTime() - start));
+            running.set(false);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
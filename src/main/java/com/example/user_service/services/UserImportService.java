@@ -0,0 +1,342 @@
+package com.example.user_service.services;
+
+import com.example.user_service.config.SecurityConfig;
+import com.example.user_service.dtos.ImportJobDTO;
+import com.example.user_service.dtos.ImportRowErrorDTO;
+import com.example.user_service.dtos.NewUser;
+import com.example.user_service.dtos.VerificationEmailDTO;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.user_service.services.UserServiceImpl.*;
+import static com.example.user_service.utils.TokenUtils.sha256Hex;
+
+// Bulk user creation: the upload is spooled to a temporary file and imported in chunks by a background job.
+// Each chunk is validated, checked against existing emails with one IN query, hashed in parallel and
+// inserted with its verification emails in one batched transaction.
+@Service
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int MAX_KEPT_JOBS = 100;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private UserStatistics userStatistics;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("userImportExecutor")
+    private ExecutorService userImportExecutor;
+
+    @Autowired
+    @Qualifier("userImportHashingExecutor")
+    private ExecutorService userImportHashingExecutor;
+
+    @Value("${user.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${user.verification.token-ttl:24h}")
+    private Duration verificationTokenTtl;
+
+    private final PasswordEncoder passwordEncoder = SecurityConfig.bcryptPasswordEncoder();
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+
+    // Accepts a JSON array or newline delimited JSON objects with the same fields as the register endpoint
+    public ImportJobDTO startImport(InputStream body) throws IOException {
+        Path file = Files.createTempFile("user-import-", ".json");
+        Files.copy(body, file, StandardCopyOption.REPLACE_EXISTING);
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString());
+        removeOldJobs();
+        jobs.put(job.id, job);
+
+        userImportExecutor.submit(() -> run(job, file));
+        return job.toDTO();
+    }
+
+    public ImportJobDTO getJob(String id) {
+        ImportJob job = jobs.get(id);
+        return job == null ? null : job.toDTO();
+    }
+
+
+    private void run(ImportJob job, Path file) {
+        job.status = "RUNNING";
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+
+            RowReader rows = startsWithArray(reader) ? arrayRows(reader) : lineRows(reader);
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            Row row;
+            while ((row = rows.next()) != null) {
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    importChunk(job, chunk);
+                    chunk.clear();
+                }
+            }
+            importChunk(job, chunk);
+            job.status = "COMPLETED";
+
+        } catch (Exception e) {
+            log.warn("User import {} failed: {}", job.id, e.getMessage());
+            job.addError(new ImportRowErrorDTO(job.processed.get() + 1, null, "Import stopped: " + e.getMessage()));
+            job.status = "FAILED";
+
+        } finally {
+            job.finishedAt = Instant.now();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete import file {}", file);
+            }
+        }
+    }
+
+    // Inside an array a value that does not map to a user fails its row and the iterator skips to the next value.
+    // Broken JSON leaves no way to find the next element, so it stops the import.
+    private RowReader arrayRows(Reader reader) throws IOException {
+        MappingIterator<NewUser> values = objectMapper.readerFor(NewUser.class).readValues(reader);
+        AtomicLong rowNumber = new AtomicLong();
+        return () -> {
+            if (!values.hasNextValue()) {
+                return null;
+            }
+            long number = rowNumber.incrementAndGet();
+            try {
+                return new Row(number, values.nextValue(), null);
+            } catch (JsonMappingException e) {
+                return new Row(number, null, "The row is not a valid user: " + e.getOriginalMessage());
+            }
+        };
+    }
+
+    // One user per line, every line is read on its own so even broken JSON only fails its row
+    private RowReader lineRows(BufferedReader reader) {
+        ObjectReader userReader = objectMapper.readerFor(NewUser.class);
+        AtomicLong rowNumber = new AtomicLong();
+        return () -> {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+
+            long number = rowNumber.incrementAndGet();
+            try {
+                return new Row(number, userReader.readValue(line), null);
+            } catch (JsonProcessingException e) {
+                return new Row(number, null, "The row is not a valid user: " + e.getOriginalMessage());
+            }
+        };
+    }
+
+    private static boolean startsWithArray(BufferedReader reader) throws IOException {
+        int first;
+        do {
+            reader.mark(1);
+            first = reader.read();
+        } while (first != -1 && Character.isWhitespace(first));
+        reader.reset();
+        return first == '[';
+    }
+
+    private void importChunk(ImportJob job, List<Row> chunk) throws Exception {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<Row> valid = new ArrayList<>(chunk.size());
+        for (Row row : chunk) {
+            String error = row.error() != null ? row.error() : validate(row.user());
+            if (error == null && !job.seenEmails.add(row.user().email())) {
+                error = "This email is repeated in the file.";
+            }
+            if (error != null) {
+                job.fail(row, error);
+            } else {
+                valid.add(row);
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            Set<String> existing = new HashSet<>(userRepository.findExistingEmails(valid.stream().map(row -> row.user().email()).toList()));
+            valid.removeIf(row -> {
+                if (existing.contains(row.user().email())) {
+                    job.fail(row, "This email is already registered.");
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        List<Future<String>> hashes = new ArrayList<>(valid.size());
+        for (Row row : valid) {
+            hashes.add(userImportHashingExecutor.submit(() -> passwordEncoder.encode(row.user().password())));
+        }
+
+        Instant tokenExpiresAt = Instant.now().plus(verificationTokenTtl);
+        List<PendingUser> pending = new ArrayList<>(valid.size());
+        for (int i = 0; i < valid.size(); i++) {
+            NewUser newUser = valid.get(i).user();
+            String verificationToken = UUID.randomUUID().toString();
+            pending.add(new PendingUser(valid.get(i), hashes.get(i).get(), sha256Hex(verificationToken), tokenExpiresAt,
+                    new VerificationEmailDTO(newUser.email(), verificationToken)));
+        }
+
+        try {
+            insert(pending);
+            job.imported.addAndGet(pending.size());
+        } catch (DataIntegrityViolationException e) {
+            // Someone registered one of the emails meanwhile, retry the chunk row by row to find it.
+            // insert builds new entities on every attempt, the ones of the failed batch already got ids.
+            for (PendingUser user : pending) {
+                try {
+                    insert(List.of(user));
+                    job.imported.incrementAndGet();
+                } catch (DataIntegrityViolationException rowException) {
+                    job.fail(user.row(), isEmailConstraintViolation(rowException) ? "This email is already registered." : "The user could not be saved.");
+                }
+            }
+        }
+        job.processed.addAndGet(chunk.size());
+    }
+
+    private void insert(List<PendingUser> pending) {
+        List<UserEntity> users = pending.stream().map(PendingUser::toEntity).toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            userRepository.saveAll(users);
+            outboxService.enqueueVerificationEmails(pending.stream().map(PendingUser::verificationEmail).toList());
+            users.forEach(user -> userStatistics.recordCreated(user.getRole(), user.isVerified()));
+        });
+    }
+
+    private static String validate(NewUser user) {
+        if (user == null) {
+            return "The row is empty.";
+        }
+        try {
+            validateUserName(user.username());
+            validatePassword(user.password());
+            validateUserEmail(user.email());
+            validateIfRoleIsCorrect(user.role());
+            return null;
+        } catch (Exception e) {
+            return e.getMessage() != null ? e.getMessage() : "Invalid user data.";
+        }
+    }
+
+    private void removeOldJobs() {
+        if (jobs.size() < MAX_KEPT_JOBS) {
+            return;
+        }
+        jobs.values().stream()
+                .filter(job -> job.finishedAt != null)
+                .min(Comparator.comparing(job -> job.finishedAt))
+                .ifPresent(job -> jobs.remove(job.id));
+    }
+
+
+    // error is set when the row could not be read, user is then null
+    private record Row(long number, NewUser user, String error) { }
+
+    // Null once the file has no more rows
+    private interface RowReader {
+        Row next() throws IOException;
+    }
+
+    // A validated row with its password already hashed, turned into a new entity for each insert attempt
+    private record PendingUser(Row row, String passwordHash, String tokenHash, Instant tokenExpiresAt,
+                               VerificationEmailDTO verificationEmail) {
+
+        UserEntity toEntity() {
+            NewUser newUser = row.user();
+            UserEntity user = new UserEntity(newUser.email(), newUser.username(), passwordHash, RoleType.valueOf(newUser.role()));
+            user.setVerificationToken(tokenHash, tokenExpiresAt);
+            return user;
+        }
+    }
+
+    private static class ImportJob {
+        private final String id;
+        private final Instant startedAt = Instant.now();
+        private volatile Instant finishedAt;
+        private volatile String status = "QUEUED";
+
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final List<ImportRowErrorDTO> errors = Collections.synchronizedList(new ArrayList<>());
+
+        // Only touched by the import thread
+        private final Set<String> seenEmails = new HashSet<>();
+
+        private ImportJob(String id) {
+            this.id = id;
+        }
+
+        private void fail(Row row, String message) {
+            failed.incrementAndGet();
+            addError(new ImportRowErrorDTO(row.number(), row.user() != null ? row.user().email() : null, message));
+        }
+
+        private void addError(ImportRowErrorDTO error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        private ImportJobDTO toDTO() {
+            List<ImportRowErrorDTO> errorsCopy;
+            synchronized (errors) {
+                errorsCopy = List.copyOf(errors);
+            }
+            return new ImportJobDTO(id, status, processed.get(), imported.get(), failed.get(), startedAt, finishedAt, errorsCopy);
+        }
+    }
+}
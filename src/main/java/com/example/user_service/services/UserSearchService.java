@@ -0,0 +1,134 @@
+package com.example.user_service.services;
+
+import com.example.user_service.dtos.UserAllDataDTO;
+import com.example.user_service.dtos.UserSearchPageDTO;
+import com.example.user_service.exceptions.InvalidCursorException;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static com.example.user_service.models.UserEntity.lower;
+import static com.example.user_service.services.UserServiceImpl.MAX_PAGE_SIZE;
+
+// Filtered admin search in keyset pages. The users are ordered by role, then verification state, then by the
+// searched prefix column (or the id) and the id. Each role and verification group is read with its own query,
+// a range of one idx_user_search_* index that is already in page order, and the groups are walked in turn
+// until the page is full. A filter left out only adds groups, so a page never costs more than a few index
+// ranges of page size, whatever the table size.
+@Service
+public class UserSearchService {
+
+    private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private enum SortKey { ID, USERNAME, EMAIL }
+
+    private record Group(RoleType role, boolean verified) { }
+
+    private record Cursor(Group group, Long afterId, String afterKey) { }
+
+    @Transactional(readOnly = true)
+    public UserSearchPageDTO search(RoleType role, Boolean verified, String usernamePrefix, String emailPrefix,
+                                    int size, String cursor) throws InvalidCursorException {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        String username = usernamePrefix == null || usernamePrefix.isBlank() ? null : lower(usernamePrefix);
+        String email = emailPrefix == null || emailPrefix.isBlank() ? null : lower(emailPrefix);
+        // With both prefixes the email drives, it is unique and so the narrower range
+        SortKey sortKey = email != null ? SortKey.EMAIL : username != null ? SortKey.USERNAME : SortKey.ID;
+
+        List<Group> groups = groups(role, verified);
+        Cursor start = cursor == null || cursor.isBlank() ? null : decode(cursor, sortKey, groups);
+        int firstGroup = start == null ? 0 : groups.indexOf(start.group());
+
+        List<UserAllDataDTO> users = new ArrayList<>(pageSize);
+        for (int i = firstGroup; i < groups.size(); i++) {
+            Group group = groups.get(i);
+            boolean resume = start != null && i == firstGroup;
+            Long afterId = resume ? start.afterId() : 0L;
+            String afterKey = resume ? start.afterKey() : "";
+
+            // One row more than needed tells whether the page ends inside this group
+            int remaining = pageSize - users.size();
+            List<UserAllDataDTO> rows = query(sortKey, group, username, email, afterKey, afterId, Limit.of(remaining + 1));
+            if (rows.size() > remaining) {
+                users.addAll(rows.subList(0, remaining));
+                return new UserSearchPageDTO(users, encode(sortKey, group, users.get(users.size() - 1)));
+            }
+
+            users.addAll(rows);
+            if (users.size() == pageSize && i < groups.size() - 1) {
+                return new UserSearchPageDTO(users, encode(sortKey, group, users.get(users.size() - 1)));
+            }
+        }
+        return new UserSearchPageDTO(users, null);
+    }
+
+    private List<UserAllDataDTO> query(SortKey sortKey, Group group, String username, String email,
+                                       String afterKey, Long afterId, Limit limit) {
+        return switch (sortKey) {
+            case ID -> userRepository.searchGroupById(group.role(), group.verified(), afterId, limit);
+            case USERNAME -> userRepository.searchGroupByUsername(group.role(), group.verified(),
+                    from(username, afterKey), to(username), afterKey, afterId, limit);
+            case EMAIL -> userRepository.searchGroupByEmail(group.role(), group.verified(),
+                    from(email, afterKey), to(email), afterKey, afterId, username == null ? "" : username, limit);
+        };
+    }
+
+    // The range of the prefix, starting at the cursor when it is past the first match
+    private static String from(String prefix, String afterKey) {
+        return afterKey.compareTo(prefix) > 0 ? afterKey : prefix;
+    }
+
+    private static String to(String prefix) {
+        return prefix + Character.MAX_VALUE;
+    }
+
+    // Every group the filters allow, in page order
+    private static List<Group> groups(RoleType role, Boolean verified) {
+        List<Group> groups = new ArrayList<>();
+        for (RoleType groupRole : role != null ? new RoleType[]{role} : RoleType.values()) {
+            for (boolean groupVerified : verified != null ? new boolean[]{verified} : new boolean[]{false, true}) {
+                groups.add(new Group(groupRole, groupVerified));
+            }
+        }
+        return groups;
+    }
+
+    // Opaque to clients, it is the position of the last user of the page
+    private static String encode(SortKey sortKey, Group group, UserAllDataDTO last) {
+        String afterKey = switch (sortKey) {
+            case ID -> "";
+            case USERNAME -> lower(last.getUsername());
+            case EMAIL -> lower(last.getEmail());
+        };
+        String cursor = sortKey + "|" + group.role() + "|" + group.verified() + "|" + last.getId() + "|" + afterKey;
+        return CURSOR_ENCODER.encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A cursor is only valid with the filters of the search that produced it
+    private static Cursor decode(String cursor, SortKey sortKey, List<Group> groups) throws InvalidCursorException {
+        try {
+            String[] parts = new String(CURSOR_DECODER.decode(cursor), StandardCharsets.UTF_8).split("\\|", 5);
+            if (parts.length == 5 && parts[0].equals(sortKey.name())) {
+                Group group = new Group(RoleType.valueOf(parts[1]), Boolean.parseBoolean(parts[2]));
+                if (groups.contains(group)) {
+                    return new Cursor(group, Long.valueOf(parts[3]), parts[4]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Not base64, an unknown role or a malformed id, reported below like any other foreign cursor
+        }
+        throw new InvalidCursorException("The cursor is invalid or belongs to a search with other filters.");
+    }
+}
@@ -1,11 +1,14 @@
 package com.example.user_service.services;
 
 import com.example.user_service.dtos.*;
+import com.example.user_service.exceptions.BatchRequestException;
 import com.example.user_service.exceptions.NoUsersFoundException;
 import com.example.user_service.models.RoleType;
 import com.example.user_service.models.UserEntity;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 @Service
@@ -14,20 +17,23 @@ public interface UserService {
     UserEntity getUserById (Long id) throws NoUsersFoundException;
     UserEntity getUserByEmail(String email) throws NoUsersFoundException;
     UserDTO getUserDTOById (Long id) throws NoUsersFoundException;
+    Long getUserVersion(Long id);
     String getEmailById(Long id) throws NoUsersFoundException;
-    String validateEmailExist(String email);
     UserAllDataDTO getUserDTOByIdWithRole(Long id) throws NoUsersFoundException;
     List<UserAllDataDTO> getAllUsers() throws NoUsersFoundException;
+    UserPageDTO getUsersPage(Long afterId, int size);
+    UserBatchDTO getUsersBatch(UserBatchRequest request) throws BatchRequestException;
+    void exportUsers(String format, OutputStream outputStream) throws IOException;
 
     void createNewUser(NewUser newUser) throws Exception;
-    UserEntity findByVerificationToken(String token);
-    void welcomeEmail (String email);
-    UserEntity saveUser(UserEntity user);
+    boolean verifyEmail(String token);
+    void resendVerificationEmail(String email);
 
-    UserDTO updateUserById(UpdateUser updatedUser, Long id) throws Exception;
+    UserDTO updateUserById(UpdateUser updatedUser, Long id, String ifMatch) throws Exception;
     UserDTO updateUserRoleVerifiedById(UpdateUserRoleOrVerified updatedUserRole, Long id) throws Exception;
 
     List<RoleType> getAllRoles();
+    UserStatsDTO getUserStats();
 
     void deleteUnverifiedUsers() throws NoUsersFoundException;
 }
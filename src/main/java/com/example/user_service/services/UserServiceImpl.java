@@ -1,20 +1,33 @@
 package com.example.user_service.services;
 
+import com.example.user_service.config.AuthenticatedUserCache;
+import com.example.user_service.config.UserVersionCache;
 import com.example.user_service.dtos.*;
 import com.example.user_service.exceptions.*;
 import com.example.user_service.models.RoleType;
 import com.example.user_service.models.UserEntity;
-import com.example.user_service.rabbitmq.RabbitMQProducer2;
 import com.example.user_service.repositories.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-
-import java.util.List;
-import java.util.UUID;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
 import java.util.regex.Matcher;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static com.example.user_service.utils.TokenUtils.sha256Hex;
 import static com.example.user_service.utils.ValidationUtils.EMAIL_PATTERN;
 import static com.example.user_service.utils.ValidationUtils.PASSWORD_PATTERN;
 
@@ -28,53 +41,102 @@ public class UserServiceImpl implements UserService {
     private PasswordEncoder passwordEncoder;
 
     @Autowired
-    private RabbitMQProducer2 rabbitMQProducer2;
+    private OutboxService outboxService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UnverifiedUserPurgeJob unverifiedUserPurgeJob;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AuthenticatedUserCache authenticatedUserCache;
+
+    @Autowired
+    private UserStatistics userStatistics;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private UserVersionCache userVersionCache;
+
+    @Value("${user.verification.token-ttl:24h}")
+    private Duration verificationTokenTtl;
+
+    // Minimum time between two verification emails to the same address
+    @Value("${user.verification.resend-cooldown:5m}")
+    private Duration verificationResendCooldown;
+
+    @Value("${user.batch.max-size:1000}")
+    private int batchMaxSize;
+
+    // Below the IN list limits of every supported database, and few enough binds to keep the statements cached
+    @Value("${user.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    public static final int MAX_PAGE_SIZE = 1000;
 
     @Override
     public UserEntity getUserById(Long id) throws NoUsersFoundException {
-        return userRepository.findById(id).orElseThrow( () -> new NoUsersFoundException("User with ID " + id + " not found."));
+        return userRepository.findById(id).orElseThrow( () -> NoUsersFoundException.forId(id));
     }
 
 
     @Override
     public UserEntity getUserByEmail(String email) throws NoUsersFoundException {
-        return userRepository.findByEmail(email).orElseThrow( () -> new NoUsersFoundException("User with Email " + email + " not found."));
+        return userRepository.findByEmail(email).orElseThrow( () -> NoUsersFoundException.forEmail(email));
     }
 
 
     @Override
-    public String validateEmailExist(String email) {
-        return userRepository.findByEmail(email)
-                .map(UserEntity::getEmail)
-                .orElse(null);
+    @Transactional(readOnly = true)
+    public UserDTO getUserDTOById(Long id) throws NoUsersFoundException {
+        UserDTO user = userRepository.findUserDTOById(id).orElseThrow( () -> NoUsersFoundException.forId(id));
+        userVersionCache.put(id, user.getVersion());
+        return user;
     }
 
 
+    // Only the version, from the cache or an index lookup, a conditional GET that matches never loads the user
     @Override
-    public UserDTO getUserDTOById(Long id) throws NoUsersFoundException {
-        return new UserDTO(getUserById(id));
+    @Transactional(readOnly = true)
+    public Long getUserVersion(Long id) {
+        Long version = userVersionCache.get(id);
+        if (version == null) {
+            version = userRepository.findVersionById(id).orElse(null);
+            if (version != null) {
+                userVersionCache.put(id, version);
+            }
+        }
+        return version;
     }
 
 
     @Override
+    @Transactional(readOnly = true)
     public String getEmailById(Long id) throws NoUsersFoundException {
-        UserEntity user = userRepository.findById(id).orElseThrow( () -> new NoUsersFoundException("User with ID " + id + " not found."));
-        return user.getEmail();
+        return userRepository.findEmailById(id).orElseThrow( () -> NoUsersFoundException.forId(id));
     }
 
 
     @Override
+    @Transactional(readOnly = true)
     public UserAllDataDTO getUserDTOByIdWithRole(Long id) throws NoUsersFoundException {
-        return new UserAllDataDTO(getUserById(id));
+        UserAllDataDTO user = userRepository.findUserAllDataDTOById(id).orElseThrow( () -> NoUsersFoundException.forId(id));
+        userVersionCache.put(id, user.getVersion());
+        return user;
     }
 
 
     @Override
+    @Transactional(readOnly = true)
     public List<UserAllDataDTO> getAllUsers() throws NoUsersFoundException {
 
-        List<UserAllDataDTO> users = userRepository.findAll().stream()
-                .map(UserAllDataDTO::new)
-                .collect(Collectors.toList());
+        List<UserAllDataDTO> users = userRepository.findAllUserAllDataDTOs();
 
         if (users.isEmpty()) {
             throw new NoUsersFoundException("There are no registered users.");
@@ -84,6 +146,103 @@ public class UserServiceImpl implements UserService {
     }
 
 
+    @Override
+    @Transactional(readOnly = true)
+    public UserPageDTO getUsersPage(Long afterId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<UserAllDataDTO> users = userRepository.findPageAfterId(afterId == null ? 0L : afterId, Limit.of(pageSize));
+
+        Long nextCursor = users.size() == pageSize ? users.get(users.size() - 1).getId() : null;
+        return new UserPageDTO(users, nextCursor);
+    }
+
+
+    // One IN query per chunk instead of one request per user, the response keeps the order of the request
+    @Override
+    @Transactional(readOnly = true)
+    public UserBatchDTO getUsersBatch(UserBatchRequest request) throws BatchRequestException {
+        boolean byIds = request.ids() != null && !request.ids().isEmpty();
+        boolean byEmails = request.emails() != null && !request.emails().isEmpty();
+        if (byIds == byEmails) {
+            throw new BatchRequestException("Send either ids or emails.");
+        }
+
+        List<?> keys = byIds ? request.ids() : request.emails();
+        if (keys.size() > batchMaxSize) {
+            throw new BatchRequestException("At most " + batchMaxSize + " users can be requested at once.");
+        }
+        if (keys.contains(null)) {
+            throw new BatchRequestException("The ids or emails cannot contain null values.");
+        }
+
+        return byIds
+                ? lookUpInChunks(request.ids(), userRepository::findUserAllDataDTOsByIds, UserAllDataDTO::getId)
+                : lookUpInChunks(request.emails(), userRepository::findUserAllDataDTOsByEmails, UserAllDataDTO::getEmail);
+    }
+
+    private <K> UserBatchDTO lookUpInChunks(List<K> keys, Function<List<K>, List<UserAllDataDTO>> query,
+                                            Function<UserAllDataDTO, K> keyOf) {
+        List<K> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+
+        Map<K, UserAllDataDTO> found = new HashMap<>(distinctKeys.size() * 2);
+        for (int from = 0; from < distinctKeys.size(); from += batchChunkSize) {
+            List<K> chunk = distinctKeys.subList(from, Math.min(from + batchChunkSize, distinctKeys.size()));
+            for (UserAllDataDTO user : query.apply(chunk)) {
+                found.put(keyOf.apply(user), user);
+            }
+        }
+
+        List<UserAllDataDTO> users = new ArrayList<>(found.size());
+        List<Object> missing = new ArrayList<>();
+        for (K key : distinctKeys) {
+            UserAllDataDTO user = found.get(key);
+            if (user != null) {
+                users.add(user);
+            } else {
+                missing.add(key);
+            }
+        }
+        return new UserBatchDTO(users, missing);
+    }
+
+
+    // Writes every user as it is read from the cursor, so memory use does not depend on the table size
+    @Override
+    @Transactional(readOnly = true)
+    public void exportUsers(String format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        try (Stream<UserAllDataDTO> users = userRepository.streamAllUsers()) {
+            if (format.equals("csv")) {
+                writer.write("id,username,email,role\n");
+            }
+
+            Iterator<UserAllDataDTO> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                UserAllDataDTO user = iterator.next();
+                if (format.equals("csv")) {
+                    writer.write(user.getId() + "," + csvValue(user.getUsername()) + "," + csvValue(user.getEmail()) + "," + user.getRole() + "\n");
+                } else {
+                    writer.write(objectMapper.writeValueAsString(user));
+                    writer.write('\n');
+                }
+            }
+        }
+
+        writer.flush();
+    }
+
+    private static String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+
     @Override
     public void createNewUser(NewUser newUser) throws Exception {
         validateNewUser(newUser);
@@ -96,101 +255,196 @@ public class UserServiceImpl implements UserService {
 
         UserEntity user = new UserEntity(newUser.email(), newUser.username(), encodedPassword, role);
         // Sets the random token to the user
-        user.setVerificationToken(verificationToken);
+        user.setVerificationToken(sha256Hex(verificationToken), Instant.now().plus(verificationTokenTtl));
 
         VerificationEmailDTO verificationEmailDTO = new VerificationEmailDTO(newUser.email(), verificationToken);
-        saveUser(user);
-        rabbitMQProducer2.sendVerificationEmail(verificationEmailDTO);
-        //rabbitMQProducer2.sendWelcomeEmail(newUser.email());
+        insertNewUser(user, verificationEmailDTO);
     }
 
 
-    @Override
-    public UserEntity findByVerificationToken(String token) {
-        return userRepository.findByVerificationToken(token);
+    // A single insert, a duplicated email is reported by the unique constraint instead of a previous lookup.
+    // The verification email goes to the outbox in the same transaction, after the password was hashed outside it.
+    private void insertNewUser(UserEntity user, VerificationEmailDTO verificationEmailDTO) throws EmailException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                userRepository.saveAndFlush(user);
+                outboxService.enqueueVerificationEmail(verificationEmailDTO);
+                userStatistics.recordCreated(user.getRole(), user.isVerified());
+            });
+        } catch (DataIntegrityViolationException e) {
+            if (isEmailConstraintViolation(e)) {
+                throw new EmailException("This email is already registered.");
+            }
+            throw e;
+        }
+    }
+
+    public static boolean isEmailConstraintViolation(DataIntegrityViolationException e) {
+        return e.getCause() instanceof ConstraintViolationException violation
+                && violation.getConstraintName() != null
+                && violation.getConstraintName().toLowerCase().contains(UserEntity.EMAIL_CONSTRAINT);
     }
 
 
     @Override
-    public void welcomeEmail (String email) {
-        rabbitMQProducer2.sendWelcomeEmail(email);
+    @Transactional
+    public boolean verifyEmail(String token) {
+        String tokenHash = sha256Hex(token);
+        if (userRepository.verifyByTokenHash(tokenHash, Instant.now()) == 0) {
+            return false;
+        }
+        // The update only matches unverified users and holds the row lock, so this read sees the row it changed.
+        // The id and email are needed for the caches and the welcome email, the role for the statistics.
+        UserStatusDTO user = userRepository.findUserStatusByVerificationTokenHash(tokenHash).orElseThrow();
+
+        userStatistics.recordChanged(user.role(), false, user.role(), true);
+        // The verification update is not guarded by the version, so the resulting one is not known for sure
+        userVersionCache.evict(user.id());
+        authenticatedUserCache.evict(user.email());
+        outboxService.enqueueWelcomeEmail(user.email());
+        return true;
     }
 
 
+    // Answers the same whether the email exists or not, the caller learns nothing about registered addresses.
+    // The new link goes to the outbox in the same transaction as the token it carries.
     @Override
-    public UserEntity saveUser(UserEntity user) {
-        return userRepository.save(user);
+    @Transactional
+    public void resendVerificationEmail(String email) {
+        if (email == null || email.isBlank()) {
+            return;
+        }
+
+        String verificationToken = UUID.randomUUID().toString();
+        Instant expiresAt = Instant.now().plus(verificationTokenTtl);
+        // A token issued less than the cooldown ago is kept, so the endpoint cannot flood an inbox
+        Instant reissueBefore = expiresAt.minus(verificationResendCooldown);
+        if (userRepository.reissueVerificationToken(email, sha256Hex(verificationToken), expiresAt, reissueBefore) > 0) {
+            outboxService.enqueueVerificationEmail(new VerificationEmailDTO(email, verificationToken));
+        }
     }
 
 
+    // Reads a small projection, hashes outside any transaction and then updates only the changed columns.
+    // The update only applies to the version read here, a concurrent edit in between is reported instead of overwritten.
     @Override
-    public UserDTO updateUserById(UpdateUser updatedUser, Long id) throws Exception {
-
-        UserEntity user = userRepository.findById(id)
-                .orElseThrow(()-> new NoUsersFoundException("User with ID " + id + " not found."));
+    public UserDTO updateUserById(UpdateUser updatedUser, Long id, String ifMatch) throws Exception {
 
         validateAllBlanks(updatedUser.username(), updatedUser.password());
 
-        if (!updatedUser.username().isBlank()) {
-            user.setUsername(updatedUser.username());
+        UserCredentialsDTO user = userRepository.findCredentialsById(id)
+                .orElseThrow(()-> NoUsersFoundException.forId(id));
+
+        if (ifMatch != null && !UserVersionCache.isAnyVersion(ifMatch)
+                && !Long.valueOf(user.version()).equals(UserVersionCache.versionOf(ifMatch, id))) {
+            throw new PreconditionFailedException("The user was modified, get it again and repeat the update.");
         }
 
+        String username = updatedUser.username().isBlank() ? null : updatedUser.username();
+        String encodedPassword = null;
+
         if (!updatedUser.password().isBlank()) {
-            validateUpdatedUser(updatedUser, user);
-            user.setPassword(passwordEncoder.encode(updatedUser.password()));
+            validateUpdatedUser(updatedUser, user.password());
+            encodedPassword = passwordEncoder.encode(updatedUser.password());
+        }
+
+        int updated;
+        if (username != null && encodedPassword != null) {
+            updated = userRepository.updateUsernameAndPasswordById(id, user.version(), username, UserEntity.lower(username), encodedPassword);
+        } else if (username != null) {
+            updated = userRepository.updateUsernameById(id, user.version(), username, UserEntity.lower(username));
+        } else {
+            updated = userRepository.updatePasswordById(id, user.version(), encodedPassword);
+        }
+
+        if (updated == 0) {
+            throw new UserVersionConflictException("The user was modified at the same time, get it again and repeat the update.");
         }
 
-        userRepository.save(user);
-        return new UserDTO(user);
+        userVersionCache.recordUpdated(id, user.version() + 1);
+        authenticatedUserCache.evict(user.email());
+        // A new password logs out every session, including one opened with the old password
+        if (encodedPassword != null) {
+            refreshTokenService.revokeAllForUser(id);
+        }
+        return new UserDTO(id, username != null ? username : user.username(), user.email(), user.version() + 1);
     }
 
 
+    // Validates before touching the database, then one projection read and one targeted update
     @Override
+    @Transactional
     public UserDTO updateUserRoleVerifiedById(UpdateUserRoleOrVerified updateUserRoleOrVerified, Long id) throws Exception {
 
-        UserEntity user = userRepository.findById(id)
-                .orElseThrow(()-> new NoUsersFoundException("User with ID " + id + " not found."));
-
-        if (!updateUserRoleOrVerified.role().isBlank()) {
+        RoleType role = null;
+        if (updateUserRoleOrVerified.role() != null && !updateUserRoleOrVerified.role().isBlank()) {
             validateIfRoleIsCorrect(updateUserRoleOrVerified.role());
-            RoleType role = RoleType.valueOf(updateUserRoleOrVerified.role());
-            user.setRole(role);
+            role = RoleType.valueOf(updateUserRoleOrVerified.role());
         }
 
-        if(!updateUserRoleOrVerified.isVerified().isBlank()) {
+        Boolean verified = null;
+        if (updateUserRoleOrVerified.isVerified() != null && !updateUserRoleOrVerified.isVerified().isBlank()) {
             validateIfVerifiedIsCorrect(updateUserRoleOrVerified.isVerified());
-            if(updateUserRoleOrVerified.isVerified().equals("true")) {
-                user.setVerified(true);
-            }
-            if(updateUserRoleOrVerified.isVerified().equals("false")) {
-                user.setVerified(false);
-            }
+            verified = updateUserRoleOrVerified.isVerified().equals("true");
+        }
+
+        if (role == null && verified == null) {
+            throw new RoleException("Role or isVerified must be given.");
         }
 
-        userRepository.save(user);
-        return new UserDTO(user);
+        UserStatusDTO user = userRepository.findUserStatusById(id)
+                .orElseThrow(()-> NoUsersFoundException.forId(id));
+
+        int updated;
+        if (role != null && verified != null) {
+            updated = userRepository.updateRoleAndVerifiedById(id, user.version(), role, verified);
+        } else if (role != null) {
+            updated = userRepository.updateRoleById(id, user.version(), role);
+        } else {
+            updated = userRepository.updateVerifiedById(id, user.version(), verified);
+        }
+        if (updated == 0) {
+            throw new UserVersionConflictException("The user was modified at the same time, get it again and repeat the update.");
+        }
+        userVersionCache.recordUpdated(id, user.version() + 1);
+
+        RoleType newRole = role != null ? role : user.role();
+        boolean newVerified = verified != null ? verified : user.verified();
+        userStatistics.recordChanged(user.role(), user.verified(), newRole, newVerified);
+        authenticatedUserCache.evict(user.email());
+        // The role is a claim of the access token, the user logs in again to get a token with the new one.
+        // An unverified user may not log in, so the open sessions end too.
+        if (newRole != user.role() || (user.verified() && !newVerified)) {
+            refreshTokenService.revokeAllForUser(id);
+        }
+        return new UserDTO(user.id(), user.username(), user.email());
     }
 
 
     @Override
     public List<RoleType> getAllRoles() {
-        return userRepository.findAllRoles();
+        return userStatistics.getRoles();
+    }
+
+
+    @Override
+    public UserStatsDTO getUserStats() {
+        return userStatistics.getStats();
     }
 
 
     @Override
     public void deleteUnverifiedUsers() throws NoUsersFoundException {
-        long count = userRepository.countUnverifiedUsers();
-        if (count == 0) {
-            throw new NoUsersFoundException("There are no unverified users.");
+        long purged = unverifiedUserPurgeJob.purge();
+        if (purged == 0) {
+            throw new NoUsersFoundException("There are no unverified users older than the retention period.");
         }
-        userRepository.deleteUnverifiedUsers();
     }
 
 
     //Validations
-    public void validateUpdatedUser (UpdateUser updateUser, UserEntity user) throws Exception {
-        validateEqualPassword(updateUser.password(), user.getPassword());
+    public void validateUpdatedUser (UpdateUser updateUser, String currentPassword) throws Exception {
+        validateEqualPassword(updateUser.password(), currentPassword);
         validateUpdatedPassword(updateUser.password());
     }
 
@@ -217,7 +471,6 @@ public class UserServiceImpl implements UserService {
         validateUserName(newUser.username());
         validatePassword(newUser.password());
         validateUserEmail(newUser.email());
-        validateIfEmailExist(newUser.email());
         validateIfRoleIsCorrect(newUser.role());
     }
 
@@ -247,14 +500,8 @@ public class UserServiceImpl implements UserService {
         }
     }
 
-    public void validateIfEmailExist (String email) throws EmailException {
-        if(userRepository.findByEmail(email).isPresent()) {
-            throw new EmailException ("This email is already registered.");
-        }
-    }
-
     public static void validateIfRoleIsCorrect(String role) throws RoleException {
-        if (!role.equals("USER") && !role.equals("ADMIN")) {
+        if (role == null || (!role.equals("USER") && !role.equals("ADMIN"))) {
             throw new RoleException("Role must be ADMIN or USER.");
         }
     }
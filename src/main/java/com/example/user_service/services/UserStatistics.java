@@ -0,0 +1,124 @@
+package com.example.user_service.services;
+
+import com.example.user_service.dtos.UserCountDTO;
+import com.example.user_service.dtos.UserStatsDTO;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.example.user_service.utils.TransactionUtils.afterCommit;
+
+// User counts per role and verification state kept in memory, so reading them never scans the table.
+// Seeded once the startup data is in, moved by every write of the service and reconciled on a schedule
+// against a grouped count, which also corrects writes made behind its back.
+@Component
+public class UserStatistics {
+
+    private static final Logger log = LoggerFactory.getLogger(UserStatistics.class);
+
+    private static final RoleType[] ROLES = RoleType.values();
+
+    // Two cells per role: unverified at ordinal * 2, verified at ordinal * 2 + 1
+    private final AtomicLongArray counts = new AtomicLongArray(ROLES.length * 2);
+
+    private final UserRepository userRepository;
+    private final Counter driftCounter;
+
+    public UserStatistics(UserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.driftCounter = Counter.builder("user.stats.drift")
+                .description("Users the in memory statistics were off by when reconciled")
+                .register(meterRegistry);
+    }
+
+    // After the CommandLineRunners, the initial users are already inserted
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${user.stats.reconcile-interval:300000}", initialDelayString = "${user.stats.reconcile-interval:300000}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    public void reconcile() {
+        long[] actual = new long[counts.length()];
+        for (UserCountDTO row : userRepository.countByRoleAndVerified()) {
+            actual[index(row.role(), row.verified())] = row.count();
+        }
+
+        long drift = 0;
+        for (int i = 0; i < actual.length; i++) {
+            drift += Math.abs(counts.getAndSet(i, actual[i]) - actual[i]);
+        }
+        if (drift > 0) {
+            driftCounter.increment(drift);
+            log.debug("User statistics reconciled, they were off by {} users", drift);
+        }
+    }
+
+    public void recordCreated(RoleType role, boolean verified) {
+        afterCommit(() -> counts.incrementAndGet(index(role, verified)));
+    }
+
+    public void recordDeleted(RoleType role, boolean verified, long users) {
+        afterCommit(() -> counts.addAndGet(index(role, verified), -users));
+    }
+
+    public void recordChanged(RoleType oldRole, boolean oldVerified, RoleType newRole, boolean newVerified) {
+        if (oldRole == newRole && oldVerified == newVerified) {
+            return;
+        }
+        afterCommit(() -> {
+            counts.decrementAndGet(index(oldRole, oldVerified));
+            counts.incrementAndGet(index(newRole, newVerified));
+        });
+    }
+
+    // The roles that have at least one user, in declaration order
+    public List<RoleType> getRoles() {
+        List<RoleType> roles = new ArrayList<>(ROLES.length);
+        for (RoleType role : ROLES) {
+            if (count(role, false) + count(role, true) > 0) {
+                roles.add(role);
+            }
+        }
+        return roles;
+    }
+
+    public UserStatsDTO getStats() {
+        Map<RoleType, UserStatsDTO.RoleStats> roles = new EnumMap<>(RoleType.class);
+        long verified = 0;
+        long unverified = 0;
+        for (RoleType role : ROLES) {
+            long roleVerified = count(role, true);
+            long roleUnverified = count(role, false);
+            roles.put(role, new UserStatsDTO.RoleStats(roleVerified + roleUnverified, roleVerified, roleUnverified));
+            verified += roleVerified;
+            unverified += roleUnverified;
+        }
+        return new UserStatsDTO(verified + unverified, verified, unverified, roles);
+    }
+
+    private long count(RoleType role, boolean verified) {
+        return Math.max(0, counts.get(index(role, verified)));
+    }
+
+    private static int index(RoleType role, boolean verified) {
+        return role.ordinal() * 2 + (verified ? 1 : 0);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.user_service.services;
+
+import com.example.user_service.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+// Clears expired and already used verification tokens, so the indexed token column only holds live tokens
+@Component
+public class VerificationTokenSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(VerificationTokenSweeper.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Scheduled(fixedDelayString = "${user.verification.sweep-interval:600000}")
+    public void sweep() {
+        int cleared = userRepository.clearExpiredVerificationTokens(Instant.now());
+        if (cleared > 0) {
+            log.info("Cleared {} expired verification tokens", cleared);
+        }
+    }
+}
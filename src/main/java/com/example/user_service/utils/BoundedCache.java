@@ -0,0 +1,164 @@
+package com.example.user_service.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+// Size bounded map whose entries expire at a given time. It is split in segments, each one an access ordered
+// LinkedHashMap behind its own lock, so making room only looks at the least recently used entries of one
+// segment instead of scanning the whole map.
+// Live entries the evictable predicate rejects are only dropped once they have expired. They get a second chance
+// when they come up as candidates, and a put into a segment whose candidates are all kept is refused.
+public class BoundedCache<K, V> {
+
+    // Least recently used entries inspected when a segment is full
+    private static final int EVICTION_CANDIDATES = 8;
+
+    private final Segment<K, V>[] segments;
+    private final Predicate<? super V> evictable;
+    // Milliseconds, expiresAt is compared with this clock
+    private final LongSupplier clock;
+    private final LongAdder evictions = new LongAdder();
+
+    public BoundedCache(int maxSize) {
+        this(maxSize, value -> true, System::currentTimeMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int maxSize, Predicate<? super V> evictable, LongSupplier clock) {
+        int segmentCount = maxSize <= 0 ? 1 : Math.min(16, Integer.highestOneBit(maxSize));
+        int segmentCapacity = maxSize <= 0 ? 0 : (maxSize + segmentCount - 1) / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+        this.evictable = evictable;
+        this.clock = clock;
+    }
+
+    // Null when there is no entry or it has expired
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() <= clock.getAsLong()) {
+                segment.map.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return entry.value();
+        }
+    }
+
+    // False when the segment is full and none of its candidates may be evicted
+    public boolean put(K key, V value, long expiresAt) {
+        return merge(key, value, expiresAt, (current, next) -> next);
+    }
+
+    // Combines the value with the live entry of the key, if there is one, and keeps expiresAt for the result
+    public boolean merge(K key, V value, long expiresAt, BinaryOperator<V> remapping) {
+        Segment<K, V> segment = segmentFor(key);
+        if (segment.capacity == 0) {
+            return false;
+        }
+
+        long now = clock.getAsLong();
+        synchronized (segment) {
+            Entry<V> current = segment.map.get(key);
+            if (current != null && current.expiresAt() > now) {
+                segment.map.put(key, new Entry<>(remapping.apply(current.value(), value), expiresAt));
+                return true;
+            }
+            if (current == null && segment.map.size() >= segment.capacity && !makeRoom(segment, now)) {
+                return false;
+            }
+            segment.map.put(key, new Entry<>(value, expiresAt));
+            return true;
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.map.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // An expired entry among the least recently used ones goes first, then the least recently used evictable one.
+    // Candidates that must be kept move to the most recently used end, the next full put looks at other entries.
+    private boolean makeRoom(Segment<K, V> segment, long now) {
+        K victim = null;
+        List<K> kept = new ArrayList<>();
+        Iterator<Map.Entry<K, Entry<V>>> eldest = segment.map.entrySet().iterator();
+        for (int i = 0; i < EVICTION_CANDIDATES && eldest.hasNext(); i++) {
+            Map.Entry<K, Entry<V>> candidate = eldest.next();
+            if (candidate.getValue().expiresAt() <= now) {
+                eldest.remove();
+                evictions.increment();
+                return true;
+            }
+            if (victim == null && evictable.test(candidate.getValue().value())) {
+                victim = candidate.getKey();
+            } else if (victim == null) {
+                kept.add(candidate.getKey());
+            }
+        }
+
+        kept.forEach(segment.map::get);
+        if (victim == null) {
+            return false;
+        }
+        segment.map.remove(victim);
+        evictions.increment();
+        return true;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static final class Segment<K, V> {
+        private final int capacity;
+        private final LinkedHashMap<K, Entry<V>> map;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<>(16, 0.75f, true);
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) { }
+}
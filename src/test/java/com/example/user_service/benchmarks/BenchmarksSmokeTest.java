@@ -0,0 +1,42 @@
+package com.example.user_service.benchmarks;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Runs every benchmark once in this JVM, so a change that breaks a setup or a benchmark fails the build
+// instead of the next benchmark run. The numbers mean nothing, use the benchmark profile to measure.
+// UserReadBenchmark boots the whole service for each method, one of them is enough to check the setup,
+// and only the smallest value of the size parameters is used.
+class BenchmarksSmokeTest {
+
+    @Test
+    void everyBenchmarkRuns() throws Exception {
+        String benchmarks = getClass().getPackageName().replace(".", "\\.");
+        Options options = new OptionsBuilder()
+                .include(benchmarks + "\\.(?!UserReadBenchmark)\\w+Benchmark\\.")
+                .include(benchmarks + "\\.UserReadBenchmark\\.getUserById$")
+                .param("revoked", "10000")
+                .param("users", "10")
+                .mode(Mode.SingleShotTime)
+                .forks(0)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .measurementBatchSize(1)
+                .shouldFailOnError(true)
+                .verbosity(VerboseMode.SILENT)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        assertFalse(results.isEmpty());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.user_service.benchmarks;
+
+import com.example.user_service.dtos.UserAllDataDTO;
+import com.example.user_service.dtos.UserDTO;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+    @Param({"10", "1000"})
+    public int users;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserEntity user;
+    private List<UserEntity> entities;
+    private List<UserAllDataDTO> dtos;
+
+    @Setup
+    public void setUp() {
+        entities = new ArrayList<>(users);
+        for (long i = 1; i <= users; i++) {
+            UserEntity entity = new UserEntity("user" + i + "@gmail.com", "User" + i, "$2a$10$hash", i % 2 == 0 ? RoleType.USER : RoleType.ADMIN);
+            ReflectionTestUtils.setField(entity, "id", i);
+            entities.add(entity);
+        }
+        user = entities.get(0);
+        dtos = mapAll();
+    }
+
+    @Benchmark
+    public UserDTO mapUserDTO() {
+        return new UserDTO(user);
+    }
+
+    @Benchmark
+    public List<UserAllDataDTO> mapAll() {
+        return entities.stream()
+                .map(UserAllDataDTO::new)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serializeAll() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerializeAll() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(mapAll());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.user_service.benchmarks;
+
+import com.example.user_service.dtos.ErrorResponseDTO;
+import com.example.user_service.exceptions.NoUsersFoundException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
+
+// The 404 path of a user lookup: the service throws, the advice catches and builds the error body.
+// The depth stands in for the filter chain, proxies and dispatcher frames between the two.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExceptionBenchmark {
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private long id = 999_999;
+
+    // How NoUsersFoundException was built before, a full stack trace and the message formatted eagerly
+    static class LegacyNoUsersFoundException extends Exception {
+        LegacyNoUsersFoundException(String message) {
+            super(message);
+        }
+    }
+
+    @Benchmark
+    public ErrorResponseDTO legacyNotFound() {
+        try {
+            throwLegacy(depth);
+            return null;
+        } catch (LegacyNoUsersFoundException e) {
+            return ErrorResponseDTO.of(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    @Benchmark
+    public ErrorResponseDTO stacklessNotFound() {
+        try {
+            throwStackless(depth);
+            return null;
+        } catch (NoUsersFoundException e) {
+            return ErrorResponseDTO.of(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    private void throwLegacy(int frames) throws LegacyNoUsersFoundException {
+        if (frames > 0) {
+            throwLegacy(frames - 1);
+            return;
+        }
+        throw new LegacyNoUsersFoundException("User with ID " + id + " not found.");
+    }
+
+    private void throwStackless(int frames) throws NoUsersFoundException {
+        if (frames > 0) {
+            throwStackless(frames - 1);
+            return;
+        }
+        throw NoUsersFoundException.forId(id);
+    }
+}
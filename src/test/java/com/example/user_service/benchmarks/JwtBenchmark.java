@@ -0,0 +1,62 @@
+package com.example.user_service.benchmarks;
+
+import com.example.user_service.config.JwtClaimsCache;
+import com.example.user_service.config.JwtKeyRing;
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.RoleType;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private static final String SECRET = Base64.getEncoder().encodeToString(new byte[48]);
+
+    // HS256 needs the shared secret on every verifier, the asymmetric ones only the public key
+    @Param({"HS256", "RS256", "Ed25519"})
+    public String algorithm;
+
+    private JwtUtils jwtUtils;
+    private JwtUtils uncachedJwtUtils;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        // Both share the ring, the uncached one has to verify what the other signed
+        JwtKeyRing keyRing = new JwtKeyRing(algorithm, 3_600_000L, "", "", "");
+        jwtUtils = newJwtUtils(keyRing, 10_000);
+        uncachedJwtUtils = newJwtUtils(keyRing, 0);
+        token = jwtUtils.createToken("tomas@gmail.com", 1L, RoleType.USER);
+    }
+
+    @Benchmark
+    public String createToken() {
+        return jwtUtils.createToken("tomas@gmail.com", 1L, RoleType.USER);
+    }
+
+    @Benchmark
+    public Claims parseClaims() {
+        return uncachedJwtUtils.parseClaims(token);
+    }
+
+    @Benchmark
+    public Claims parseClaimsCached() {
+        return jwtUtils.parseClaims(token);
+    }
+
+    private static JwtUtils newJwtUtils(JwtKeyRing keyRing, int cacheSize) {
+        JwtUtils utils = new JwtUtils(SECRET, true, keyRing, new JwtClaimsCache(cacheSize, 300_000), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(utils, "expiration", 3_600_000L);
+        return utils;
+    }
+}
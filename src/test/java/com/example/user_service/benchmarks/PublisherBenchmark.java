@@ -0,0 +1,70 @@
+package com.example.user_service.benchmarks;
+
+import com.example.user_service.rabbitmq.BatchingPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Publishes verification emails to a broker stand-in, waiting for each confirm in turn versus through the batching publisher
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublisherBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    @Param({"200"})
+    public long roundTripMicros;
+
+    private StubBrokerRabbitTemplate rabbitTemplate;
+    private BatchingPublisher batchingPublisher;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        rabbitTemplate = new StubBrokerRabbitTemplate(roundTripMicros, 1_000);
+        batchingPublisher = new BatchingPublisher(rabbitTemplate, new SimpleMeterRegistry(), Executors.defaultThreadFactory(), 100, 5, 10_000, 4, 5_000);
+        batchingPublisher.start();
+
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        message = new Message("{\"email\":\"tomas@gmail.com\",\"token\":\"0f8fad5b-d9cb-469f-a165-70867728950e\"}"
+                .getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        batchingPublisher.close();
+        rabbitTemplate.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void sendAndConfirmEach() throws Exception {
+        for (int i = 0; i < MESSAGES; i++) {
+            CorrelationData correlationData = new CorrelationData();
+            rabbitTemplate.send("verificationEmailExchange", "verification.email", message, correlationData);
+            correlationData.getFuture().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void batched() throws Exception {
+        CompletableFuture<?>[] confirms = new CompletableFuture<?>[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            confirms[i] = batchingPublisher.submit("verificationEmailExchange", "verification.email", message);
+        }
+        CompletableFuture.allOf(confirms).get(5, TimeUnit.SECONDS);
+    }
+}
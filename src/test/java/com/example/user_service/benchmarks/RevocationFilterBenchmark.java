@@ -0,0 +1,45 @@
+package com.example.user_service.benchmarks;
+
+import com.example.user_service.utils.BloomFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RevocationFilterBenchmark {
+
+    // Revoked access tokens held by the filter, sized like TokenRevocationService does
+    @Param({"10000", "1000000"})
+    public int revoked;
+
+    private BloomFilter filter;
+    private String revokedJti;
+    private String validJti;
+
+    @Setup
+    public void setUp() {
+        filter = new BloomFilter(revoked * 2L, 0.01);
+        for (int i = 0; i < revoked; i++) {
+            revokedJti = UUID.randomUUID().toString();
+            filter.add(revokedJti);
+        }
+        validJti = UUID.randomUUID().toString();
+    }
+
+    // The common case, a token that was never revoked is answered without a lookup
+    @Benchmark
+    public boolean checkValidToken() {
+        return filter.mightContain(validJti);
+    }
+
+    @Benchmark
+    public boolean checkRevokedToken() {
+        return filter.mightContain(revokedJti);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.user_service.benchmarks;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Local broker stand-in: every send costs a little CPU and its confirm arrives after a simulated round trip
+public class StubBrokerRabbitTemplate extends RabbitTemplate {
+
+    private final ScheduledExecutorService broker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stub-broker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long roundTripMicros;
+    private final long sendNanos;
+
+    public StubBrokerRabbitTemplate(long roundTripMicros, long sendNanos) {
+        this.roundTripMicros = roundTripMicros;
+        this.sendNanos = sendNanos;
+    }
+
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        LockSupport.parkNanos(sendNanos);
+        if (correlationData != null) {
+            broker.schedule(() -> correlationData.getFuture().complete(new CorrelationData.Confirm(true, null)),
+                    roundTripMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    // A dedicated channel is not needed by the stand-in, the callback runs against this template
+    @Override
+    public <T> T invoke(OperationsCallback<T> action) {
+        return action.doInRabbit(this);
+    }
+
+    public void shutdown() {
+        broker.shutdownNow();
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.user_service.benchmarks;
+
+import com.example.user_service.UserServiceApplication;
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.dtos.UserAllDataDTO;
+import com.example.user_service.dtos.UserDTO;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import com.example.user_service.services.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Boots the whole service on a random port with H2, compares entity loads against the read projections
+// and measures the two read endpoints end to end. Run with -prof gc (the benchmark profile does) for allocations.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserReadBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private UserService userService;
+    private HttpClient httpClient;
+
+    private Long userId;
+    private HttpRequest infoRequest;
+    private HttpRequest userByIdRequest;
+    private HttpRequest missingUserRequest;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(UserServiceApplication.class)
+                .run("--server.port=0",
+                        "--eureka.client.enabled=false",
+                        "--jwt.secret=" + Base64.getEncoder().encodeToString(new byte[48]),
+                        "--outbox.relay.interval=3600000",
+                        "--logging.level.root=WARN");
+
+        userRepository = context.getBean(UserRepository.class);
+        userService = context.getBean(UserService.class);
+        JwtUtils jwtUtils = context.getBean(JwtUtils.class);
+
+        UserEntity user = userRepository.findByEmail("tomas@gmail.com").orElseThrow();
+        UserEntity admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        userId = user.getId();
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newHttpClient();
+        infoRequest = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/user/info"))
+                .header("Authorization", "Bearer " + jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole()))
+                .build();
+        String adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+        userByIdRequest = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/user/" + userId))
+                .header("Authorization", "Bearer " + adminToken)
+                .build();
+        missingUserRequest = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/user/999999"))
+                .header("Authorization", "Bearer " + adminToken)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    // How the read endpoints loaded users before: a managed entity copied into the DTO
+    @Benchmark
+    public UserDTO entityLoad() {
+        return new UserDTO(userRepository.findById(userId).orElseThrow());
+    }
+
+    // The same lookup through the projection query alone, without the read only service transaction
+    @Benchmark
+    public UserDTO projectionQuery() {
+        return userRepository.findUserDTOById(userId).orElseThrow();
+    }
+
+    @Benchmark
+    public UserDTO projectionUserDTO() throws Exception {
+        return userService.getUserDTOById(userId);
+    }
+
+    @Benchmark
+    public UserAllDataDTO projectionUserAllDataDTO() throws Exception {
+        return userService.getUserDTOByIdWithRole(userId);
+    }
+
+    @Benchmark
+    public String getInfo() throws IOException, InterruptedException {
+        return httpClient.send(infoRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public String getUserById() throws IOException, InterruptedException {
+        return httpClient.send(userByIdRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    // The 404 path, an id enumeration scan hits this far more often than the one above
+    @Benchmark
+    public String getMissingUser() throws IOException, InterruptedException {
+        return httpClient.send(missingUserRequest, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.user_service.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.user_service.utils.ValidationUtils.EMAIL_PATTERN;
+import static com.example.user_service.utils.ValidationUtils.PASSWORD_PATTERN;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Emails {
+        @Param({"tomas@gmail.com", "not-an-email"})
+        public String email;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Passwords {
+        @Param({"Tomas123.", "weakpassword"})
+        public String password;
+    }
+
+    @Benchmark
+    public boolean emailPattern(Emails emails) {
+        return EMAIL_PATTERN.matcher(emails.email).matches();
+    }
+
+    @Benchmark
+    public boolean passwordPattern(Passwords passwords) {
+        return PASSWORD_PATTERN.matcher(passwords.password).matches();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.user_service.config;
+
+import com.example.user_service.models.RoleType;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtKeyRingTest {
+
+    private static final String SECRET = Base64.getEncoder().encodeToString(new byte[48]);
+
+    @Test
+    void nextKeyIsPublishedOneRotationBeforeItSigns() {
+        JwtKeyRing keyRing = new JwtKeyRing("RS256", 60_000, "", "", "");
+        String active = keyRing.signingKey().kid();
+        String etag = keyRing.getJwksETag();
+
+        assertTrue(jwks(keyRing).contains("\"kid\":\"" + active + "\""));
+        assertEquals(2, count(jwks(keyRing), "\"kid\""));
+
+        keyRing.rotate();
+
+        String next = keyRing.signingKey().kid();
+        assertNotEquals(active, next);
+        assertNotNull(keyRing.verificationKey(active));
+        assertEquals(3, count(jwks(keyRing), "\"kid\""));
+        assertNotEquals(etag, keyRing.getJwksETag());
+    }
+
+    @Test
+    void tokenOfARetiredKeyVerifiesWhileItCanStillBeValid() {
+        JwtKeyRing keyRing = new JwtKeyRing("Ed25519", 60_000, "", "", "");
+        JwtUtils jwtUtils = jwtUtils(keyRing, true);
+        String token = jwtUtils.createToken("tomas@gmail.com", 2L, RoleType.USER);
+
+        keyRing.rotate();
+        keyRing.rotate();
+
+        assertEquals(2L, jwtUtils.extractUserId(token));
+    }
+
+    @Test
+    void tokenOfADroppedKeyIsRejected() {
+        // Tokens live no time at all, a retired key is dropped on the next rotation
+        JwtKeyRing keyRing = new JwtKeyRing("RS256", 0, "", "", "");
+        String kid = keyRing.signingKey().kid();
+        String token = jwtUtils(keyRing, true).createToken("tomas@gmail.com", 2L, RoleType.USER);
+
+        keyRing.rotate();
+        keyRing.rotate();
+
+        assertNull(keyRing.verificationKey(kid));
+        assertFalse(jwks(keyRing).contains(kid));
+        assertThrows(UnsupportedJwtException.class, () -> jwtUtils(keyRing, true).parseClaims(token));
+    }
+
+    @Test
+    void tokenSignedByAnotherRingIsRejected() {
+        JwtKeyRing keyRing = new JwtKeyRing("RS256", 60_000, "", "", "");
+        String foreignToken = jwtUtils(new JwtKeyRing("RS256", 60_000, "", "", ""), true)
+                .createToken("tomas@gmail.com", 2L, RoleType.USER);
+
+        assertThrows(UnsupportedJwtException.class, () -> jwtUtils(keyRing, true).parseClaims(foreignToken));
+    }
+
+    @Test
+    void hmacTokensAreOnlyAcceptedWhileSwitching() {
+        String hmacToken = jwtUtils(new JwtKeyRing("HS256", 60_000, "", "", ""), true)
+                .createToken("tomas@gmail.com", 2L, RoleType.USER);
+        JwtKeyRing keyRing = new JwtKeyRing("RS256", 60_000, "", "", "");
+
+        assertEquals(2L, jwtUtils(keyRing, true).extractUserId(hmacToken));
+        assertThrows(UnsupportedJwtException.class, () -> jwtUtils(keyRing, false).parseClaims(hmacToken));
+    }
+
+    @Test
+    void sharedSecretPublishesNoKeys() {
+        JwtKeyRing keyRing = new JwtKeyRing("HS256", 60_000, "", "", "");
+
+        assertFalse(keyRing.isEnabled());
+        assertEquals("{\"keys\":[]}", jwks(keyRing));
+    }
+
+    private static JwtUtils jwtUtils(JwtKeyRing keyRing, boolean acceptHmac) {
+        JwtUtils jwtUtils = new JwtUtils(SECRET, acceptHmac, keyRing, new JwtClaimsCache(100, 60_000), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jwtUtils, "expiration", 60_000L);
+        return jwtUtils;
+    }
+
+    private static String jwks(JwtKeyRing keyRing) {
+        return new String(keyRing.getJwks(), StandardCharsets.UTF_8);
+    }
+
+    private static int count(String text, String part) {
+        return text.split(part, -1).length - 1;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.user_service.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketThrottleTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void emptyBucketRefillsOneTokenPerInterval() {
+        TokenBucketThrottle throttle = throttle(2, 1000, 100, 1000, 60_000);
+
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(1000, throttle.tryAcquire("a"));
+
+        advanceMillis(400);
+        assertEquals(600, throttle.tryAcquire("a"));
+
+        advanceMillis(600);
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(1000, throttle.tryAcquire("a"));
+    }
+
+    @Test
+    void backoffDoublesWithEveryFailureUpToTheMaximum() {
+        TokenBucketThrottle throttle = throttle(100, 10, 3, 1000, 60_000);
+        throttle.tryAcquire("a");
+
+        throttle.recordFailure("a");
+        throttle.recordFailure("a");
+        assertEquals(0, throttle.tryAcquire("a"));
+
+        long[] expected = {1000, 2000, 4000, 8000, 16_000, 32_000, 60_000, 60_000};
+        for (long wait : expected) {
+            throttle.recordFailure("a");
+            assertEquals(wait, throttle.tryAcquire("a"));
+        }
+
+        throttle.recordSuccess("a");
+        assertEquals(0, throttle.tryAcquire("a"));
+    }
+
+    @Test
+    void newKeyIsThrottledWhenEveryKeyHasFailures() {
+        TokenBucketThrottle throttle = throttle(5, 1000, 1, 1000, 60_000, 1, 60_000);
+        assertEquals(0, throttle.tryAcquire("a"));
+        throttle.recordFailure("a");
+
+        assertEquals(1000, throttle.tryAcquire("b"));
+        assertEquals(1, throttle.size());
+        // The key in backoff kept its state
+        assertEquals(1000, throttle.tryAcquire("a"));
+    }
+
+    // Logins for made up emails that never fail cannot lock everyone else out
+    @Test
+    void tableFullOfNeutralKeysStillAdmitsANewKey() {
+        TokenBucketThrottle throttle = throttle(5, 1000, 3, 1000, 60_000, 4, 60_000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, throttle.tryAcquire("flood-" + i));
+        }
+
+        assertEquals(0, throttle.tryAcquire("new"));
+        assertEquals(4, throttle.size());
+    }
+
+    @Test
+    void succeededKeyMakesRoomForANewOne() {
+        TokenBucketThrottle throttle = throttle(5, 1000, 1, 1000, 60_000, 1, 60_000);
+        assertEquals(0, throttle.tryAcquire("a"));
+        throttle.recordFailure("a");
+        assertEquals(1000, throttle.tryAcquire("b"));
+
+        throttle.recordSuccess("a");
+
+        assertEquals(0, throttle.tryAcquire("b"));
+        assertEquals(1, throttle.size());
+    }
+
+    @Test
+    void keyMakesRoomOnceItsFailuresAreOver() {
+        TokenBucketThrottle throttle = throttle(5, 1000, 1, 1000, 60_000, 1, 200);
+        assertEquals(0, throttle.tryAcquire("a"));
+        throttle.recordFailure("a");
+        assertEquals(1000, throttle.tryAcquire("b"));
+
+        // Out of the backoff and idle for longer than a streak lasts
+        advanceMillis(1001);
+
+        assertEquals(0, throttle.tryAcquire("b"));
+        assertEquals(1, throttle.size());
+    }
+
+    @Test
+    void idleKeyExpiresOnTheThrottleClock() {
+        // Kept for the longest of the idle, backoff and refill periods, 5 seconds here
+        TokenBucketThrottle throttle = throttle(5, 1000, 1, 1000, 1000, 100, 200);
+        assertEquals(0, throttle.tryAcquire("a"));
+        assertEquals(1, throttle.size());
+
+        advanceMillis(4999);
+        throttle.tryAcquire("b");
+        assertEquals(2, throttle.size());
+
+        advanceMillis(2);
+        throttle.recordFailure("a");
+        assertEquals(0, throttle.tryAcquire("a"));
+    }
+
+    private TokenBucketThrottle throttle(int capacity, long refillMillis, int failuresBeforeBackoff,
+                                         long initialBackoffMillis, long maxBackoffMillis) {
+        return throttle(capacity, refillMillis, failuresBeforeBackoff, initialBackoffMillis, maxBackoffMillis,
+                100, 600_000);
+    }
+
+    private TokenBucketThrottle throttle(int capacity, long refillMillis, int failuresBeforeBackoff,
+                                         long initialBackoffMillis, long maxBackoffMillis, int maxKeys, long idleMillis) {
+        return new TokenBucketThrottle(capacity, refillMillis, failuresBeforeBackoff, initialBackoffMillis,
+                maxBackoffMillis, maxKeys, idleMillis, nanos::get);
+    }
+
+    private void advanceMillis(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
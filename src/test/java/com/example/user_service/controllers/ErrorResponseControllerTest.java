@@ -0,0 +1,100 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Every failure answers with the same ErrorResponseDTO body, whether it comes from the advice or the security filters
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:controller-test",
+        "eureka.client.enabled=false"
+})
+@AutoConfigureMockMvc
+class ErrorResponseControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    private UserEntity user;
+    private String userToken;
+    private String adminToken;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.findByEmail("tomas@gmail.com").orElseThrow();
+        UserEntity admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        userToken = jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole());
+        adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+    }
+
+    @Test
+    void missingUserIsNotFound() throws Exception {
+        mockMvc.perform(get("/api/user/999999").header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(404))
+                .andExpect(jsonPath("$.message").value("User with ID 999999 not found."));
+    }
+
+    @Test
+    void invalidFieldIsABadRequest() throws Exception {
+        mockMvc.perform(put("/api/user/update/roleOrVerification/" + user.getId())
+                        .header("Authorization", "Bearer " + adminToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400))
+                .andExpect(jsonPath("$.message").value("Role or isVerified must be given."));
+    }
+
+    @Test
+    void malformedRequestsAreBadRequests() throws Exception {
+        mockMvc.perform(get("/api/user/abc").header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("The request is malformed."));
+
+        mockMvc.perform(post("/api/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("The request is malformed."));
+    }
+
+    @Test
+    void missingOrInvalidTokenIsUnauthorized() throws Exception {
+        mockMvc.perform(get("/api/user/info"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(jsonPath("$.status").value(401))
+                .andExpect(jsonPath("$.message").value("Unauthorized: a valid token is required."));
+
+        mockMvc.perform(get("/api/user/info").header("Authorization", "Bearer not-a-token"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(jsonPath("$.message").value("Unauthorized: invalid or expired token."));
+    }
+
+    @Test
+    void adminEndpointIsForbiddenToUsers() throws Exception {
+        mockMvc.perform(get("/api/user/" + user.getId()).header("Authorization", "Bearer " + userToken))
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.status").value(403))
+                .andExpect(jsonPath("$.message").value("Forbidden: You cannot access this data."));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtKeyRing;
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:jwks-test",
+        "eureka.client.enabled=false",
+        "jwt.signing.algorithm=RS256"
+})
+@AutoConfigureMockMvc
+class JwksControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtKeyRing jwtKeyRing;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void keySetIsPublicAndNamesTheSigningKey() throws Exception {
+        String kid = jwtKeyRing.signingKey().kid();
+
+        mockMvc.perform(get("/.well-known/jwks.json"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/jwk-set+json"))
+                .andExpect(header().string(HttpHeaders.ETAG, jwtKeyRing.getJwksETag()))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("max-age=300")))
+                .andExpect(jsonPath("$.keys", hasSize(2)))
+                .andExpect(jsonPath("$.keys[?(@.kid == '" + kid + "')].alg").value("RS256"))
+                .andExpect(jsonPath("$.keys[0].d").doesNotExist());
+    }
+
+    @Test
+    void currentETagIsNotModified() throws Exception {
+        mockMvc.perform(get("/.well-known/jwks.json").header(HttpHeaders.IF_NONE_MATCH, jwtKeyRing.getJwksETag()))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void tokensAreSignedWithTheActiveKey() throws Exception {
+        UserEntity user = userRepository.findByEmail("tomas@gmail.com").orElseThrow();
+        String token = jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole());
+
+        mockMvc.perform(get("/api/user/info").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value(user.getEmail()));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.user_service.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// A real server, the forwarded headers are applied by Tomcat and not by MockMvc
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:login-throttle-proxy-test",
+        "eureka.client.enabled=false",
+        "auth.throttle.ip.capacity=2",
+        "auth.throttle.ip.refill=600000"
+})
+class LoginThrottleProxyTest {
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    // Both clients reach the service from the gateway on the loopback address
+    @Test
+    void clientsBehindTheGatewayHaveTheirOwnBuckets() throws Exception {
+        assertEquals(401, failedLogin("203.0.113.1"));
+        assertEquals(401, failedLogin("203.0.113.1"));
+        assertEquals(429, failedLogin("203.0.113.1"));
+
+        assertEquals(401, failedLogin("203.0.113.2"));
+    }
+
+    // A new email every time, only the IP bucket runs out
+    private int failedLogin(String clientIp) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .header("X-Forwarded-For", clientIp)
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"email\":\"" + UUID.randomUUID() + "@example.com\",\"password\":\"Wrong123.\"}"))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.dtos.TokenResponseDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:controller-test",
+        "eureka.client.enabled=false"
+})
+@AutoConfigureMockMvc
+class RefreshTokenControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void refreshRotatesThePair() throws Exception {
+        TokenResponseDTO login = login();
+
+        TokenResponseDTO refreshed = tokens(refresh(login.refreshToken()).andExpect(status().isOk()));
+
+        assertNotEquals(login.refreshToken(), refreshed.refreshToken());
+        assertNotEquals(login.accessToken(), refreshed.accessToken());
+        assertEquals("Bearer", refreshed.tokenType());
+        info(refreshed.accessToken()).andExpect(status().isOk());
+    }
+
+    // Only a stolen copy can present a consumed token, so the whole family and its access tokens are revoked
+    @Test
+    void reusedRefreshTokenRevokesTheFamily() throws Exception {
+        TokenResponseDTO login = login();
+        TokenResponseDTO refreshed = tokens(refresh(login.refreshToken()).andExpect(status().isOk()));
+
+        refresh(login.refreshToken())
+                .andExpect(status().isUnauthorized())
+                .andExpect(jsonPath("$.status").value(401));
+
+        refresh(refreshed.refreshToken()).andExpect(status().isUnauthorized());
+        info(refreshed.accessToken()).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void unknownRefreshTokenIsUnauthorized() throws Exception {
+        refresh("not-a-refresh-token").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void logoutEndsTheFamilyAndTheAccessToken() throws Exception {
+        TokenResponseDTO login = login();
+
+        logout(login).andExpect(status().isNoContent());
+
+        refresh(login.refreshToken()).andExpect(status().isUnauthorized());
+        info(login.accessToken()).andExpect(status().isUnauthorized());
+        // Idempotent, logging out again changes nothing
+        logout(login).andExpect(status().isNoContent());
+    }
+
+    private TokenResponseDTO login() throws Exception {
+        return tokens(mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"tomas@gmail.com\",\"password\":\"Tomas123.\"}"))
+                .andExpect(status().isOk()));
+    }
+
+    private ResultActions refresh(String refreshToken) throws Exception {
+        return mockMvc.perform(post("/api/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + refreshToken + "\"}"));
+    }
+
+    private ResultActions logout(TokenResponseDTO tokens) throws Exception {
+        return mockMvc.perform(post("/api/auth/logout")
+                .header("Authorization", "Bearer " + tokens.accessToken())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + tokens.refreshToken() + "\"}"));
+    }
+
+    private ResultActions info(String accessToken) throws Exception {
+        return mockMvc.perform(get("/api/user/info").header("Authorization", "Bearer " + accessToken));
+    }
+
+    private TokenResponseDTO tokens(ResultActions result) throws Exception {
+        return objectMapper.readValue(result.andReturn().getResponse().getContentAsString(), TokenResponseDTO.class);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import com.example.user_service.services.UserServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:controller-test",
+        "eureka.client.enabled=false"
+})
+@AutoConfigureMockMvc
+class RegistrationControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void secondRegistrationOfAnEmailIsRejected() throws Exception {
+        register("twice@example.com").andExpect(status().isCreated());
+
+        register("twice@example.com")
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400))
+                .andExpect(jsonPath("$.message").value("This email is already registered."));
+        assertEquals(1, userRepository.findAll().stream().filter(user -> user.getEmail().equals("twice@example.com")).count());
+    }
+
+    @Test
+    void invalidRegistrationIsRejectedBeforeTheInsert() throws Exception {
+        register("no-at-sign").andExpect(status().isBadRequest());
+
+        assertTrue(userRepository.findByEmail("no-at-sign").isEmpty());
+    }
+
+    // The database enforces uniqueness on its own, registration relies on it instead of a lookup
+    @Test
+    void uniqueConstraintRejectsADuplicateEmail() {
+        userRepository.saveAndFlush(new UserEntity("constraint@example.com", "Constraint", "hash", RoleType.USER));
+
+        DataIntegrityViolationException e = assertThrows(DataIntegrityViolationException.class, () ->
+                userRepository.saveAndFlush(new UserEntity("constraint@example.com", "Other", "hash", RoleType.USER)));
+        assertTrue(UserServiceImpl.isEmailConstraintViolation(e));
+    }
+
+    private ResultActions register(String email) throws Exception {
+        return mockMvc.perform(post("/api/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"" + email + "\",\"username\":\"Registered\",\"password\":\"Password123.\",\"role\":\"USER\"}"));
+    }
+}
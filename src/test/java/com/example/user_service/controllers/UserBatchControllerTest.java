@@ -0,0 +1,135 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:controller-test",
+        "eureka.client.enabled=false"
+})
+@AutoConfigureMockMvc
+class UserBatchControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Value("${user.batch.max-size}")
+    private int maxSize;
+
+    @Value("${user.batch.chunk-size}")
+    private int chunkSize;
+
+    private UserEntity admin;
+    private UserEntity user;
+    private String adminToken;
+
+    @BeforeEach
+    void setUp() {
+        admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        user = userRepository.findByEmail("tomas@gmail.com").orElseThrow();
+        adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+    }
+
+    @Test
+    void usersFollowTheRequestOrderAndMissesAreListed() throws Exception {
+        batch("{\"ids\":[" + user.getId() + ",999999," + admin.getId() + "," + user.getId() + "]}")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(2)))
+                .andExpect(jsonPath("$.users[0].email").value(user.getEmail()))
+                .andExpect(jsonPath("$.users[1].email").value(admin.getEmail()))
+                .andExpect(jsonPath("$.users[0].password").doesNotExist())
+                .andExpect(jsonPath("$.missing", hasSize(1)))
+                .andExpect(jsonPath("$.missing[0]").value(999999));
+    }
+
+    @Test
+    void emailsAreLookedUpToo() throws Exception {
+        batch("{\"emails\":[\"nobody@example.com\",\"" + admin.getEmail() + "\"]}")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users[0].id").value(admin.getId()))
+                .andExpect(jsonPath("$.missing[0]").value("nobody@example.com"));
+    }
+
+    // More keys than one chunk takes several queries, the answer is the same
+    @Test
+    void requestLargerThanAChunkIsAnsweredWhole() throws Exception {
+        String ids = LongStream.rangeClosed(1_000_000, 1_000_000 + chunkSize)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        batch("{\"ids\":[" + ids + "," + user.getId() + "]}")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(1)))
+                .andExpect(jsonPath("$.missing", hasSize(chunkSize + 1)));
+    }
+
+    @Test
+    void requestOverTheLimitIsRejected() throws Exception {
+        String ids = LongStream.rangeClosed(1, maxSize + 1)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        batch("{\"ids\":[" + ids + "]}")
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("At most " + maxSize + " users can be requested at once."));
+    }
+
+    @Test
+    void eitherIdsOrEmailsMustBeSent() throws Exception {
+        batch("{\"ids\":[" + user.getId() + "],\"emails\":[\"" + user.getEmail() + "\"]}")
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Send either ids or emails."));
+        batch("{\"ids\":[]}")
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Send either ids or emails."));
+    }
+
+    @Test
+    void nullKeyIsRejected() throws Exception {
+        batch("{\"ids\":[" + user.getId() + ",null]}")
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("The ids or emails cannot contain null values."));
+    }
+
+    @Test
+    void batchIsForAdminsOnly() throws Exception {
+        String userToken = jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole());
+
+        mockMvc.perform(post("/api/user/batch")
+                        .header("Authorization", "Bearer " + userToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[" + user.getId() + "]}"))
+                .andExpect(status().isForbidden());
+    }
+
+    private ResultActions batch(String body) throws Exception {
+        return mockMvc.perform(post("/api/user/batch")
+                .header("Authorization", "Bearer " + adminToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body));
+    }
+}
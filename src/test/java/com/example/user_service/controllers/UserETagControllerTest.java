@@ -0,0 +1,149 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:controller-test",
+        "eureka.client.enabled=false"
+})
+@AutoConfigureMockMvc
+class UserETagControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    private UserEntity user;
+    private String userToken;
+
+    // A user of its own, the updates must not change the seeded users other tests read
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new UserEntity("etag-" + UUID.randomUUID() + "@example.com", "Etagged", "hash", RoleType.USER));
+        userToken = jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole());
+    }
+
+    @Test
+    void currentETagIsNotModifiedUntilTheUserChanges() throws Exception {
+        String etag = info().andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"" + user.getId() + "-", etag.substring(0, etag.indexOf('-') + 1));
+
+        mockMvc.perform(get("/api/user/info")
+                        .header("Authorization", "Bearer " + userToken)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        update("Renamed", etag).andExpect(status().isCreated());
+
+        mockMvc.perform(get("/api/user/info")
+                        .header("Authorization", "Bearer " + userToken)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value("Renamed"));
+    }
+
+    @Test
+    void updateWithTheCurrentETagAnswersTheNextOne() throws Exception {
+        String etag = currentETag();
+
+        String next = update("Renamed", etag)
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.username").value("Renamed"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertNotEquals(etag, next);
+        assertEquals(next, currentETag());
+    }
+
+    // The second writer of the same version loses instead of overwriting the first
+    @Test
+    void updateWithAStaleETagIsRejected() throws Exception {
+        String etag = currentETag();
+        update("First", etag).andExpect(status().isCreated());
+
+        update("Second", etag)
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.status").value(412));
+
+        assertEquals("First", userRepository.findById(user.getId()).orElseThrow().getUsername());
+    }
+
+    @Test
+    void etagOfAnotherUserIsRejected() throws Exception {
+        UserEntity other = userRepository.findByEmail("tomas@gmail.com").orElseThrow();
+
+        update("Renamed", "\"" + other.getId() + "-0\"").andExpect(status().isPreconditionFailed());
+        update("Renamed", "W/\"" + user.getId() + "-0\"").andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void anyVersionOrNoPreconditionUpdates() throws Exception {
+        update("Starred", "*").andExpect(status().isCreated());
+        update("Unconditional", null).andExpect(status().isCreated());
+
+        assertEquals("Unconditional", userRepository.findById(user.getId()).orElseThrow().getUsername());
+    }
+
+    @Test
+    void adminReadOfAUserHasTheSameETag() throws Exception {
+        UserEntity admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        String adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+        String etag = currentETag();
+
+        mockMvc.perform(get("/api/user/" + user.getId()).header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        mockMvc.perform(get("/api/user/" + user.getId())
+                        .header("Authorization", "Bearer " + adminToken)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    private ResultActions info() throws Exception {
+        return mockMvc.perform(get("/api/user/info").header("Authorization", "Bearer " + userToken));
+    }
+
+    private String currentETag() throws Exception {
+        return info().andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private ResultActions update(String username, String ifMatch) throws Exception {
+        MockHttpServletRequestBuilder request = put("/api/user/update")
+                .header("Authorization", "Bearer " + userToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + username + "\",\"password\":\"\"}");
+        if (ifMatch != null) {
+            request.header(HttpHeaders.IF_MATCH, ifMatch);
+        }
+        return mockMvc.perform(request);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:controller-test",
+        "eureka.client.enabled=false"
+})
+@AutoConfigureMockMvc
+class UserExportControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String adminToken;
+
+    @BeforeEach
+    void setUp() {
+        if (userRepository.findByEmail("comma@example.com").isEmpty()) {
+            userRepository.save(new UserEntity("comma@example.com", "Last, First", "hash", RoleType.USER));
+        }
+        UserEntity admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+    }
+
+    @Test
+    void pagesWalkEveryUserOnceInIdOrder() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String after = "0";
+        while (after != null) {
+            JsonNode page = getJson("/api/user/users/page?size=2&after=" + after);
+            assertTrue(page.get("users").size() <= 2);
+            page.get("users").forEach(user -> ids.add(user.get("id").asLong()));
+            after = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+        }
+
+        assertEquals(userRepository.count(), ids.size());
+        assertEquals(ids.stream().sorted().distinct().toList(), ids);
+    }
+
+    @Test
+    void pageSizeIsClampedToAtLeastOne() throws Exception {
+        JsonNode page = getJson("/api/user/users/page?size=0");
+
+        assertEquals(1, page.get("users").size());
+        assertEquals(page.get("users").get(0).get("id").asLong(), page.get("nextCursor").asLong());
+    }
+
+    @Test
+    void ndjsonExportHasOneUserPerLineAndNoPasswords() throws Exception {
+        String body = export("ndjson", "application/x-ndjson");
+
+        String[] lines = body.split("\n");
+        assertEquals(userRepository.count(), lines.length);
+        for (String line : lines) {
+            JsonNode user = objectMapper.readTree(line);
+            assertTrue(user.hasNonNull("email"));
+            assertFalse(user.has("password"));
+        }
+    }
+
+    @Test
+    void csvExportQuotesValuesWithSeparators() throws Exception {
+        String body = export("csv", "text/csv");
+
+        String[] lines = body.split("\n");
+        assertEquals("id,username,email,role", lines[0]);
+        assertEquals(userRepository.count() + 1, lines.length);
+        assertTrue(body.contains(",\"Last, First\",comma@example.com,USER\n"));
+    }
+
+    @Test
+    void unknownFormatIsRejected() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/user/users/export?format=xml").header("Authorization", "Bearer " + adminToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportIsForAdminsOnly() throws Exception {
+        UserEntity user = userRepository.findByEmail("tomas@gmail.com").orElseThrow();
+        String userToken = jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole());
+
+        mockMvc.perform(get("/api/user/users/export").header("Authorization", "Bearer " + userToken))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/user/users/page").header("Authorization", "Bearer " + userToken))
+                .andExpect(status().isForbidden());
+    }
+
+    private JsonNode getJson(String path) throws Exception {
+        String body = mockMvc.perform(get(path).header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+
+    // The body is streamed after the handler returns, so the response is only complete after the async dispatch
+    private String export(String format, String contentType) throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/user/users/export?format=" + format).header("Authorization", "Bearer " + adminToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(contentType))
+                .andReturn().getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import com.example.user_service.services.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+
+// A real server, MockMvc never times out an async request
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:export-timeout-test",
+        "eureka.client.enabled=false",
+        "spring.mvc.async.request-timeout=200ms"
+})
+class UserExportTimeoutTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @MockitoSpyBean
+    private UserService userService;
+
+    @Test
+    void exportOutlivesTheAsyncRequestTimeout() throws Exception {
+        // Slower than the async timeout of every other handler
+        doAnswer(invocation -> {
+            TimeUnit.MILLISECONDS.sleep(600);
+            return invocation.callRealMethod();
+        }).when(userService).exportUsers(anyString(), any(OutputStream.class));
+
+        UserEntity admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        String adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/user/users/export"))
+                .header("Authorization", "Bearer " + adminToken)
+                .build();
+
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertEquals(userRepository.count(), response.body().lines().count());
+    }
+}
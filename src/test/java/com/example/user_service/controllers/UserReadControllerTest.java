@@ -0,0 +1,100 @@
+package com.example.user_service.controllers;
+
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:controller-test",
+        "eureka.client.enabled=false"
+})
+@AutoConfigureMockMvc
+class UserReadControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private UserEntity user;
+    private String userToken;
+    private String adminToken;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.findByEmail("tomas@gmail.com").orElseThrow();
+        UserEntity admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        userToken = jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole());
+        adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+    }
+
+    @AfterEach
+    void disableStatistics() {
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    void userByIdIsReadAsAProjection() throws Exception {
+        mockMvc.perform(get("/api/user/" + user.getId()).header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(user.getId()))
+                .andExpect(jsonPath("$.username").value(user.getUsername()))
+                .andExpect(jsonPath("$.email").value(user.getEmail()))
+                .andExpect(jsonPath("$.role").value(user.getRole().name()))
+                .andExpect(jsonPath("$.password").doesNotExist())
+                .andExpect(jsonPath("$.version").doesNotExist());
+
+        assertEquals(0, userEntityLoads());
+    }
+
+    @Test
+    void loggedUserIsReadAsAProjection() throws Exception {
+        mockMvc.perform(get("/api/user/info").header("Authorization", "Bearer " + userToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(user.getId()))
+                .andExpect(jsonPath("$.email").value(user.getEmail()))
+                .andExpect(jsonPath("$.role").doesNotExist())
+                .andExpect(jsonPath("$.password").doesNotExist());
+
+        assertEquals(0, userEntityLoads());
+    }
+
+    @Test
+    void missingUserIsNotFound() throws Exception {
+        mockMvc.perform(get("/api/user/999999").header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(404));
+    }
+
+    // Other entities may be loaded meanwhile by the scheduled jobs of the shared context
+    private long userEntityLoads() {
+        return statistics.getEntityStatistics(UserEntity.class.getName()).getLoadCount();
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.user_service.exceptions;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DomainExceptionTest {
+
+    @Test
+    void noStackTraceIsCaptured() {
+        assertEquals(0, NoUsersFoundException.forId(5L).getStackTrace().length);
+        assertEquals(0, new EmailException("Invalid email.").getStackTrace().length);
+    }
+
+    @Test
+    void suppressedExceptionsAreDropped() {
+        RoleException exception = new RoleException("Invalid role.");
+        exception.addSuppressed(new IllegalStateException());
+
+        assertEquals(0, exception.getSuppressed().length);
+    }
+
+    @Test
+    void notFoundMessageIsBuiltOnRead() {
+        assertEquals("User with ID 5 not found.", NoUsersFoundException.forId(5L).getMessage());
+        assertEquals("User with Email a@example.com not found.", NoUsersFoundException.forEmail("a@example.com").getMessage());
+        assertEquals("No users found.", new NoUsersFoundException("No users found.").getMessage());
+    }
+}
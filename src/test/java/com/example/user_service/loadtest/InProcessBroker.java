@@ -0,0 +1,62 @@
+package com.example.user_service.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.user_service.config.RabbitMQConfig.VERIFICATION_EMAIL_ROUTING_KEY;
+
+// Broker stand-in registered as the RabbitTemplate: every message is confirmed at once and the verification
+// emails are kept, so a load test client can pick up the token it would otherwise receive by email
+public class InProcessBroker extends RabbitTemplate {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, CompletableFuture<String>> verificationTokens = new ConcurrentHashMap<>();
+
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        if (VERIFICATION_EMAIL_ROUTING_KEY.equals(routingKey)) {
+            JsonNode email = readBody(message);
+            tokenFor(email.get("email").asText()).complete(email.get("token").asText());
+        }
+        if (correlationData != null) {
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+        }
+    }
+
+    // A dedicated channel is not needed by the stand-in, the callback runs against this template
+    @Override
+    public <T> T invoke(OperationsCallback<T> action) {
+        return action.doInRabbit(this);
+    }
+
+    // Waits until the outbox relay has published the verification email of this address
+    public String awaitVerificationToken(String email, long timeoutMillis) throws Exception {
+        try {
+            return tokenFor(email).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            verificationTokens.remove(email);
+        }
+    }
+
+    private CompletableFuture<String> tokenFor(String email) {
+        return verificationTokens.computeIfAbsent(email, key -> new CompletableFuture<>());
+    }
+
+    private JsonNode readBody(Message message) {
+        try {
+            return objectMapper.readTree(message.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.user_service.loadtest;
+
+import com.example.user_service.loadtest.UserEndpointsLoadTest.Operation;
+import com.example.user_service.loadtest.UserEndpointsLoadTest.Samples;
+import com.example.user_service.models.OutboxMessage;
+import com.example.user_service.rabbitmq.RabbitMQProducer2;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.example.user_service.config.RabbitMQConfig.VERIFICATION_EMAIL_EXCHANGE;
+import static com.example.user_service.config.RabbitMQConfig.VERIFICATION_EMAIL_ROUTING_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// The load tests only run with -Dloadtest=true, these keep their broker stand-in and bookkeeping honest in every build
+class LoadTestHarnessTest {
+
+    @Test
+    void brokerConfirmsThePublishAndKeepsTheVerificationToken() throws Exception {
+        InProcessBroker broker = new InProcessBroker();
+        RabbitMQProducer2 producer = new RabbitMQProducer2();
+        ReflectionTestUtils.setField(producer, "rabbitTemplate", broker);
+        ReflectionTestUtils.setField(producer, "meterRegistry", new SimpleMeterRegistry());
+
+        byte[] body = "{\"email\":\"load@example.com\",\"token\":\"abc\"}".getBytes(StandardCharsets.UTF_8);
+        producer.publish(new OutboxMessage(VERIFICATION_EMAIL_EXCHANGE, VERIFICATION_EMAIL_ROUTING_KEY, body,
+                "application/json", "java.util.Map")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("abc", broker.awaitVerificationToken("load@example.com", 1000));
+    }
+
+    @Test
+    void waitingForAnEmailThatIsNeverPublishedTimesOut() {
+        InProcessBroker broker = new InProcessBroker();
+
+        assertThrows(TimeoutException.class, () -> broker.awaitVerificationToken("never@example.com", 10));
+    }
+
+    @Test
+    void mixRepeatsEachOperationByItsWeight() {
+        Operation[] mix = UserEndpointsLoadTest.parseMix("login:1, info:3");
+
+        assertEquals(1, Arrays.stream(mix).filter(operation -> operation == Operation.LOGIN).count());
+        assertEquals(3, Arrays.stream(mix).filter(operation -> operation == Operation.INFO).count());
+        assertThrows(IllegalArgumentException.class, () -> UserEndpointsLoadTest.parseMix("info:0"));
+    }
+
+    @Test
+    void percentilesAndErrorRateComeFromTheSamples() {
+        Samples samples = new Samples();
+        for (int i = 1000; i >= 1; i--) {
+            samples.add(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        samples.addError();
+
+        assertEquals(500, samples.percentile("p50"));
+        assertEquals(990, samples.percentile("p99"));
+        assertEquals(999, samples.percentile("p999"));
+        assertEquals(0.001, samples.errorRate());
+    }
+}
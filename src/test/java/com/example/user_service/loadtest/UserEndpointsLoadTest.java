@@ -0,0 +1,344 @@
+package com.example.user_service.loadtest;
+
+import com.example.user_service.UserServiceApplication;
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives a mix of the auth and user endpoints against the whole service, booted with H2 and InProcessBroker
+// in place of RabbitMQ, and fails if any endpoint falls below the thresholds in loadtest-thresholds.properties.
+// Every threshold can be overridden with a system property of the same name, -Dloadtest.info.max-p99=20.
+//
+//   mvn test -Dtest=UserEndpointsLoadTest -Dloadtest=true [-Dloadtest.concurrency=16 -Dloadtest.duration=20
+//       -Dloadtest.warmup=5 -Dloadtest.mix=login:10,register:5,info:70,list:15 -Dloadtest.users=50]
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class UserEndpointsLoadTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 16);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 5);
+    private static final int LOAD_USERS = Integer.getInteger("loadtest.users", 50);
+    private static final String MIX = System.getProperty("loadtest.mix", "login:10,register:5,info:70,list:15");
+
+    private static final String PASSWORD = "Loadtest123.";
+    private static final long VERIFICATION_TIMEOUT_MILLIS = 5000;
+
+    // Register is one operation of the mix but two requests, each reported on its own
+    enum Endpoint { LOGIN, REGISTER, VERIFY, INFO, LIST }
+
+    enum Operation { LOGIN, REGISTER, INFO, LIST }
+
+    private static ConfigurableApplicationContext context;
+    private static InProcessBroker broker;
+    private static String baseUrl;
+    private static List<String> emails;
+    private static List<String> tokens;
+    private static String adminToken;
+
+    private static final AtomicLong registrations = new AtomicLong();
+
+    @BeforeAll
+    static void startService() {
+        broker = new InProcessBroker();
+        context = new SpringApplicationBuilder(UserServiceApplication.class)
+                // Registered before the auto-configuration runs, so it replaces the RabbitTemplate
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("rabbitTemplate", broker))
+                .run("--server.port=0",
+                        "--eureka.client.enabled=false",
+                        "--jwt.secret=" + Base64.getEncoder().encodeToString(new byte[48]),
+                        "--outbox.relay.interval=20",
+                        "--auth.throttle.enabled=false",
+                        "--logging.level.root=WARN");
+
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        JwtUtils jwtUtils = context.getBean(JwtUtils.class);
+
+        // One hash for every load test user, seeding should not take longer than the run
+        String encodedPassword = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        List<UserEntity> users = new ArrayList<>();
+        for (int i = 0; i < LOAD_USERS; i++) {
+            UserEntity user = new UserEntity("loadtest-" + i + "@example.com", "Loadtest" + i, encodedPassword, RoleType.USER);
+            user.setVerified(true);
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+
+        emails = users.stream().map(UserEntity::getEmail).toList();
+        tokens = users.stream().map(user -> jwtUtils.createToken(user.getEmail(), user.getId(), user.getRole())).toList();
+        UserEntity admin = userRepository.findByEmail("manuel@gmail.com").orElseThrow();
+        adminToken = jwtUtils.createToken(admin.getEmail(), admin.getId(), admin.getRole());
+
+        baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @AfterAll
+    static void stopService() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void mixedWorkloadMeetsTheThresholds() throws Exception {
+        Operation[] mix = parseMix(MIX);
+
+        // The warmup lets the JIT compile the request path before anything is recorded
+        drive(mix, WARMUP_SECONDS);
+        Map<Endpoint, Samples> results = drive(mix, DURATION_SECONDS);
+
+        Properties thresholds = loadThresholds();
+        List<String> failures = new ArrayList<>();
+        System.out.printf("concurrency=%d duration=%ds mix=%s%n", CONCURRENCY, DURATION_SECONDS, MIX);
+        for (Endpoint endpoint : Endpoint.values()) {
+            Samples samples = results.get(endpoint);
+            if (samples.size == 0) {
+                continue;
+            }
+            System.out.println(samples.describe(endpoint));
+            check(endpoint, samples, thresholds, failures);
+        }
+
+        assertTrue(failures.isEmpty(), "Load test thresholds not met:\n" + String.join("\n", failures));
+    }
+
+    private static void check(Endpoint endpoint, Samples samples, Properties thresholds, List<String> failures) {
+        String prefix = "loadtest." + endpoint.name().toLowerCase(Locale.ROOT) + ".";
+
+        double maxErrorRate = Double.parseDouble(thresholds.getProperty("loadtest.max-error-rate", "0"));
+        if (samples.errorRate() > maxErrorRate) {
+            failures.add(String.format("%s: error rate %.4f above %.4f", endpoint, samples.errorRate(), maxErrorRate));
+        }
+
+        String minThroughput = thresholds.getProperty(prefix + "min-throughput");
+        if (minThroughput != null && samples.throughput(DURATION_SECONDS) < Double.parseDouble(minThroughput)) {
+            failures.add(String.format("%s: throughput %.1f/s below %s/s", endpoint, samples.throughput(DURATION_SECONDS), minThroughput));
+        }
+
+        for (String percentile : List.of("p50", "p99", "p999")) {
+            String max = thresholds.getProperty(prefix + "max-" + percentile);
+            double value = samples.percentile(percentile);
+            if (max != null && value > Double.parseDouble(max)) {
+                failures.add(String.format("%s: %s %.1fms above %sms", endpoint, percentile, value, max));
+            }
+        }
+    }
+
+    // Closed loop: every client starts its next operation as soon as the previous one is answered
+    private static Map<Endpoint, Samples> drive(Operation[] mix, int durationSeconds) throws Exception {
+        ExecutorService httpThreads = Executors.newFixedThreadPool(CONCURRENCY);
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(httpThreads)
+                .build();
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        List<Future<Map<Endpoint, Samples>>> results = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            results.add(clients.submit(() -> {
+                Map<Endpoint, Samples> samples = newSamples();
+                while (System.nanoTime() < deadline) {
+                    Operation operation = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+                    run(httpClient, operation, samples);
+                }
+                return samples;
+            }));
+        }
+
+        Map<Endpoint, Samples> merged = newSamples();
+        for (Future<Map<Endpoint, Samples>> result : results) {
+            result.get().forEach((endpoint, samples) -> merged.get(endpoint).addAll(samples));
+        }
+        clients.shutdownNow();
+        httpThreads.shutdownNow();
+        return merged;
+    }
+
+    private static void run(HttpClient httpClient, Operation operation, Map<Endpoint, Samples> samples) throws Exception {
+        int user = ThreadLocalRandom.current().nextInt(LOAD_USERS);
+        switch (operation) {
+            case LOGIN -> send(httpClient, samples.get(Endpoint.LOGIN), 200, json("/api/auth/login",
+                    "{\"email\":\"" + emails.get(user) + "\",\"password\":\"" + PASSWORD + "\"}"));
+            case INFO -> send(httpClient, samples.get(Endpoint.INFO), 200, get("/api/user/info", tokens.get(user)));
+            case LIST -> send(httpClient, samples.get(Endpoint.LIST), 200, get("/api/user/users/page?size=100", adminToken));
+            case REGISTER -> {
+                String email = "registered-" + registrations.incrementAndGet() + "-" + UUID.randomUUID() + "@example.com";
+                boolean registered = send(httpClient, samples.get(Endpoint.REGISTER), 201, json("/api/auth/register",
+                        "{\"email\":\"" + email + "\",\"username\":\"Registered\",\"password\":\"" + PASSWORD + "\",\"role\":\"USER\"}"));
+                if (!registered) {
+                    return;
+                }
+
+                // Waiting for the outbox relay is not part of either request, it is left out of both latencies
+                String verificationToken;
+                try {
+                    verificationToken = broker.awaitVerificationToken(email, VERIFICATION_TIMEOUT_MILLIS);
+                } catch (Exception e) {
+                    samples.get(Endpoint.VERIFY).addError();
+                    return;
+                }
+                send(httpClient, samples.get(Endpoint.VERIFY), 200,
+                        get("/api/auth/verify?token=" + URLEncoder.encode(verificationToken, StandardCharsets.UTF_8), null));
+            }
+        }
+    }
+
+    // Records the latency of one request, anything but the expected status counts as an error
+    private static boolean send(HttpClient httpClient, Samples samples, int expectedStatus, HttpRequest request) throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<Void> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            samples.addError();
+            return false;
+        }
+        samples.add(System.nanoTime() - start);
+
+        if (response.statusCode() != expectedStatus) {
+            samples.addError();
+            return false;
+        }
+        return true;
+    }
+
+    private static HttpRequest get(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private static HttpRequest json(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    // "login:10,info:90" becomes an array with one entry per weight unit, a uniform pick follows the weights
+    static Operation[] parseMix(String mix) {
+        List<Operation> operations = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Operation operation = Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            int weight = Integer.parseInt(parts[1].trim());
+            for (int i = 0; i < weight; i++) {
+                operations.add(operation);
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The load test mix has no operations: " + mix);
+        }
+        return operations.toArray(Operation[]::new);
+    }
+
+    private static Properties loadThresholds() throws Exception {
+        Properties thresholds = new Properties();
+        try (InputStream defaults = UserEndpointsLoadTest.class.getResourceAsStream("/loadtest-thresholds.properties")) {
+            if (defaults != null) {
+                thresholds.load(defaults);
+            }
+        }
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith("loadtest."))
+                .forEach(name -> thresholds.setProperty(name, System.getProperty(name)));
+        return thresholds;
+    }
+
+    private static Map<Endpoint, Samples> newSamples() {
+        Map<Endpoint, Samples> samples = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            samples.put(endpoint, new Samples());
+        }
+        return samples;
+    }
+
+    // Latencies of one endpoint, owned by a single client until the results are merged
+    static class Samples {
+
+        private long[] latencies = new long[1024];
+        private int size;
+        private long errors;
+        private boolean sorted;
+
+        void add(long latencyNanos) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latencyNanos;
+            sorted = false;
+        }
+
+        void addError() {
+            errors++;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.latencies[i]);
+            }
+            errors += other.errors;
+        }
+
+        double throughput(int durationSeconds) {
+            return (double) size / durationSeconds;
+        }
+
+        double errorRate() {
+            return size == 0 ? 0 : (double) errors / size;
+        }
+
+        double percentile(String name) {
+            double percentile = switch (name) {
+                case "p50" -> 0.5;
+                case "p99" -> 0.99;
+                case "p999" -> 0.999;
+                default -> throw new IllegalArgumentException(name);
+            };
+            if (size == 0) {
+                return Double.NaN;
+            }
+            if (!sorted) {
+                Arrays.sort(latencies, 0, size);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return latencies[Math.max(0, index)] / 1_000_000.0;
+        }
+
+        String describe(Endpoint endpoint) {
+            return String.format("%-8s requests=%d errors=%d throughput=%.1f/s p50=%.1fms p99=%.1fms p999=%.1fms",
+                    endpoint, size, errors, throughput(DURATION_SECONDS),
+                    percentile("p50"), percentile("p99"), percentile("p999"));
+        }
+    }
+}
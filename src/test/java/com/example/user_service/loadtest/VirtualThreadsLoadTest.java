@@ -0,0 +1,208 @@
+package com.example.user_service.loadtest;
+
+import com.example.user_service.UserServiceApplication;
+import com.example.user_service.config.JwtUtils;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Compares platform and virtual request threads while the database answers slowly: every connection checkout
+// waits loadtest.db-delay ms. The request pool is smaller than the JDBC pool, so with platform threads the
+// requests queue for a Tomcat thread and with virtual threads only the explicit JDBC pool limits them.
+//
+//   mvn test -Dtest=VirtualThreadsLoadTest -Dloadtest=true [-Dloadtest.concurrency=200 -Dloadtest.duration=10
+//       -Dloadtest.warmup=3 -Dloadtest.db-delay=20 -Dloadtest.min-speedup=1.3]
+@EnabledForJreRange(min = JRE.JAVA_21)
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class VirtualThreadsLoadTest {
+
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 200);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 10);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 3);
+    private static final long DB_DELAY_MILLIS = Long.getLong("loadtest.db-delay", 20);
+    private static final double MIN_SPEEDUP = Double.parseDouble(System.getProperty("loadtest.min-speedup", "1.3"));
+
+    private static final int PLATFORM_REQUEST_THREADS = 50;
+    private static final int JDBC_POOL_SIZE = 100;
+
+    @Test
+    void virtualThreadsKeepServingWhileTheDatabaseIsSlow() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.println(platform.describe("platform"));
+        System.out.println(virtual.describe("virtual"));
+
+        assertEquals(0, platform.errors(), "platform run had failed requests");
+        assertEquals(0, virtual.errors(), "virtual run had failed requests");
+        assertTrue(virtual.throughput() > platform.throughput() * MIN_SPEEDUP,
+                "virtual threads should serve more requests while the database is slow");
+        assertTrue(virtual.percentile(0.99) < platform.percentile(0.99),
+                "virtual threads should lower the p99 latency while the database is slow");
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        AtomicBoolean slowDatabase = new AtomicBoolean();
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(UserServiceApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new SlowDataSourcePostProcessor(slowDatabase)))
+                .run("--server.port=0",
+                        "--eureka.client.enabled=false",
+                        "--jwt.secret=" + Base64.getEncoder().encodeToString(new byte[48]),
+                        "--outbox.relay.interval=3600000",
+                        "--logging.level.root=WARN",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--server.tomcat.threads.max=" + PLATFORM_REQUEST_THREADS,
+                        "--server.tomcat.max-connections=" + (CONCURRENCY * 2),
+                        "--server.tomcat.accept-count=" + (CONCURRENCY * 2),
+                        "--spring.datasource.hikari.maximum-pool-size=" + JDBC_POOL_SIZE,
+                        "--spring.datasource.hikari.connection-timeout=30000");
+
+        try {
+            UserEntity user = context.getBean(UserRepository.class).findByEmail("tomas@gmail.com").orElseThrow();
+            String token = context.getBean(JwtUtils.class).createToken(user.getEmail(), user.getId(), user.getRole());
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/user/info"))
+                    .header("Authorization", "Bearer " + token)
+                    .build();
+
+            slowDatabase.set(true);
+            // The warmup lets the JIT compile the request path before anything is recorded
+            drive(request, WARMUP_SECONDS);
+            return drive(request, DURATION_SECONDS);
+        } finally {
+            context.close();
+        }
+    }
+
+    // Closed loop: every client sends its next request as soon as the previous one is answered
+    private static Result drive(HttpRequest request, int durationSeconds) throws Exception {
+        ExecutorService httpThreads = Executors.newFixedThreadPool(CONCURRENCY);
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(httpThreads)
+                .build();
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            results.add(clients.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                long errors = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    latencies.add(System.nanoTime() - start);
+                    if (response.statusCode() != 200) {
+                        errors++;
+                    }
+                }
+                long[] values = new long[latencies.size() + 1];
+                values[0] = errors;
+                for (int j = 0; j < latencies.size(); j++) {
+                    values[j + 1] = latencies.get(j);
+                }
+                return values;
+            }));
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        long errors = 0;
+        for (Future<long[]> result : results) {
+            long[] values = result.get();
+            errors += values[0];
+            for (int j = 1; j < values.length; j++) {
+                latencies.add(values[j]);
+            }
+        }
+        clients.shutdownNow();
+        httpThreads.shutdownNow();
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return new Result(sorted, errors, durationSeconds);
+    }
+
+    private record Result(long[] sortedLatencies, long errors, int durationSeconds) {
+
+        double throughput() {
+            return (double) sortedLatencies.length / durationSeconds;
+        }
+
+        double percentile(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, index)] / 1_000_000.0;
+        }
+
+        String describe(String mode) {
+            return String.format("%-8s concurrency=%d db-delay=%dms requests=%d errors=%d throughput=%.0f/s p50=%.1fms p99=%.1fms p999=%.1fms",
+                    mode, CONCURRENCY, DB_DELAY_MILLIS, sortedLatencies.length, errors, throughput(),
+                    percentile(0.5), percentile(0.99), percentile(0.999));
+        }
+    }
+
+    // Holds every connection checkout for the configured delay once the flag is set, like a slow database round trip
+    private static class SlowDataSourcePostProcessor implements BeanPostProcessor {
+
+        private final AtomicBoolean enabled;
+
+        SlowDataSourcePostProcessor(AtomicBoolean enabled) {
+            this.enabled = enabled;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource)) {
+                return bean;
+            }
+
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    Connection connection = super.getConnection();
+                    if (enabled.get()) {
+                        try {
+                            Thread.sleep(DB_DELAY_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return connection;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.user_service.rabbitmq;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchingPublisherTest {
+
+    private final RecordingTemplate template = new RecordingTemplate();
+    private BatchingPublisher publisher;
+
+    @AfterEach
+    void close() throws InterruptedException {
+        if (publisher != null) {
+            publisher.close();
+        }
+    }
+
+    @Test
+    void messagesWithinTheLingerGoOutAsOneBatch() throws Exception {
+        publisher = start(10, 200, 100, 1, 5000);
+
+        List<CompletableFuture<Void>> futures = IntStream.range(0, 10).mapToObj(i -> submit()).toList();
+        awaitSends(10);
+        template.confirmAll(true);
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertEquals(1, template.batches.get());
+    }
+
+    @Test
+    void eachMessageFollowsItsOwnConfirm() throws Exception {
+        publisher = start(2, 200, 100, 1, 5000);
+
+        CompletableFuture<Void> acked = submit();
+        CompletableFuture<Void> nacked = submit();
+        awaitSends(2);
+        template.confirm(0, true);
+        template.confirm(1, false);
+
+        acked.get(5, TimeUnit.SECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> nacked.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AmqpException.class, e.getCause());
+    }
+
+    @Test
+    void missingConfirmFailsAfterTheTimeout() {
+        publisher = start(1, 0, 100, 1, 50);
+
+        CompletableFuture<Void> future = submit();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+    }
+
+    @Test
+    void fullBufferRejectsAtOnce() {
+        // No flusher, nothing leaves the buffer
+        publisher = start(10, 0, 1, 0, 5000);
+
+        CompletableFuture<Void> buffered = submit();
+        CompletableFuture<Void> rejected = submit();
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertFalse(buffered.isDone());
+    }
+
+    private BatchingPublisher start(int batchSize, long lingerMillis, int capacity, int flushers, long confirmTimeout) {
+        BatchingPublisher batchingPublisher = new BatchingPublisher(template, new SimpleMeterRegistry(),
+                Executors.defaultThreadFactory(), batchSize, lingerMillis, capacity, flushers, confirmTimeout);
+        batchingPublisher.start();
+        return batchingPublisher;
+    }
+
+    private CompletableFuture<Void> submit() {
+        return publisher.submit("exchange", "key", new Message(new byte[0], new MessageProperties()));
+    }
+
+    private void awaitSends(int sends) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (template.sent.size() < sends && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(sends, template.sent.size());
+    }
+
+    // Keeps the correlation of every send, the test decides when and how the broker confirms
+    private static class RecordingTemplate extends RabbitTemplate {
+
+        private final List<CorrelationData> sent = new CopyOnWriteArrayList<>();
+        private final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            sent.add(correlationData);
+        }
+
+        @Override
+        public <T> T invoke(OperationsCallback<T> action) {
+            batches.incrementAndGet();
+            return action.doInRabbit(this);
+        }
+
+        void confirm(int index, boolean ack) {
+            sent.get(index).getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "rejected"));
+        }
+
+        void confirmAll(boolean ack) {
+            for (int i = 0; i < sent.size(); i++) {
+                confirm(i, ack);
+            }
+        }
+    }
+}
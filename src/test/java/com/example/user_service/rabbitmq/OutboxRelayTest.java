@@ -0,0 +1,87 @@
+package com.example.user_service.rabbitmq;
+
+import com.example.user_service.models.OutboxMessage;
+import com.example.user_service.repositories.OutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:outbox-relay-test",
+        "eureka.client.enabled=false",
+        "outbox.relay.interval=3600000"
+})
+class OutboxRelayTest {
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @MockitoBean
+    private RabbitMQProducer2 rabbitMQProducer2;
+
+    @AfterEach
+    void emptyOutbox() {
+        outboxRepository.deleteAll();
+    }
+
+    // A second relay running while the first one publishes finds the batch already claimed
+    @Test
+    void claimedBatchIsNotPublishedTwice() {
+        enqueue(3);
+        AtomicInteger relays = new AtomicInteger();
+        when(rabbitMQProducer2.publish(any())).thenAnswer(invocation -> {
+            if (relays.getAndIncrement() == 0) {
+                outboxRelay.relay();
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+
+        outboxRelay.relay();
+
+        verify(rabbitMQProducer2, times(3)).publish(any());
+        assertEquals(0, outboxRepository.count());
+    }
+
+    @Test
+    void unconfirmedMessageIsKeptForALaterAttempt() {
+        enqueue(2);
+        when(rabbitMQProducer2.publish(any()))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("nack")));
+
+        outboxRelay.relay();
+
+        assertEquals(1, outboxRepository.count());
+        OutboxMessage failed = outboxRepository.findAll().get(0);
+        assertEquals(1, failed.getAttempts());
+        assertTrue(failed.getNextAttemptAt().isAfter(Instant.now()));
+
+        // Backing off, the next run leaves it alone
+        outboxRelay.relay();
+        verify(rabbitMQProducer2, times(2)).publish(any());
+    }
+
+    private void enqueue(int messages) {
+        for (int i = 0; i < messages; i++) {
+            byte[] body = ("\"user" + i + "@example.com\"").getBytes(StandardCharsets.UTF_8);
+            outboxRepository.save(new OutboxMessage("exchange", "key", body, "application/json", "java.lang.String"));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.user_service.rabbitmq;
+
+import com.example.user_service.models.OutboxMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RabbitMQProducer2Test {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void outboxMessageIsSentAsConvertedAndCompletesOnTheAck() throws Exception {
+        ConfirmingTemplate template = new ConfirmingTemplate(true);
+        OutboxMessage outboxMessage = outboxMessage();
+
+        producer(template).publish(outboxMessage).get(5, TimeUnit.SECONDS);
+
+        assertEquals("users.exchange", template.exchange);
+        assertEquals("users.key", template.routingKey);
+        assertArrayEquals(outboxMessage.getBody(), template.message.getBody());
+        assertEquals("application/json", template.message.getMessageProperties().getContentType());
+        assertEquals("java.lang.String", template.message.getMessageProperties().getHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME));
+        assertEquals(1, meterRegistry.get("rabbitmq.publish").tag("result", "ack").timer().count());
+    }
+
+    @Test
+    void nackFailsTheFuture() {
+        CompletableFuture<Void> confirmed = producer(new ConfirmingTemplate(false)).publish(outboxMessage());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> confirmed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AmqpException.class, e.getCause());
+        assertEquals(1, meterRegistry.get("rabbitmq.publish").tag("result", "failed").timer().count());
+        assertFalse(meterRegistry.find("rabbitmq.publish").tag("result", "ack").timers().iterator().hasNext());
+    }
+
+    private RabbitMQProducer2 producer(RabbitTemplate template) {
+        RabbitMQProducer2 producer = new RabbitMQProducer2();
+        ReflectionTestUtils.setField(producer, "rabbitTemplate", template);
+        ReflectionTestUtils.setField(producer, "meterRegistry", meterRegistry);
+        return producer;
+    }
+
+    private static OutboxMessage outboxMessage() {
+        byte[] body = "\"tomas@gmail.com\"".getBytes(StandardCharsets.UTF_8);
+        return new OutboxMessage("users.exchange", "users.key", body, "application/json", "java.lang.String");
+    }
+
+    // Confirms every send at once, with an ack or a nack
+    private static class ConfirmingTemplate extends RabbitTemplate {
+
+        private final boolean ack;
+        private String exchange;
+        private String routingKey;
+        private Message message;
+
+        ConfirmingTemplate(boolean ack) {
+            this.ack = ack;
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "rejected"));
+        }
+    }
+}
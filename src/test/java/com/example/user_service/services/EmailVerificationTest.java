@@ -0,0 +1,85 @@
+package com.example.user_service.services;
+
+import com.example.user_service.dtos.NewUser;
+import com.example.user_service.dtos.VerificationEmailDTO;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:email-verification-test",
+        "eureka.client.enabled=false"
+})
+class EmailVerificationTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockitoSpyBean
+    private OutboxService outboxService;
+
+    @Test
+    void expiredLinkIsReplacedByAResentOne() throws Exception {
+        String expired = register("expired@example.com", "expireduser");
+        // The sweeper clears every token past its expiration
+        userRepository.clearExpiredVerificationTokens(Instant.now().plus(2, ChronoUnit.DAYS));
+        assertFalse(userService.verifyEmail(expired));
+
+        userService.resendVerificationEmail("expired@example.com");
+        String resent = lastVerificationToken(2);
+        assertNotEquals(expired, resent);
+
+        assertTrue(userService.verifyEmail(resent));
+        assertFalse(userService.verifyEmail(resent));
+        assertTrue(userRepository.findByEmail("expired@example.com").orElseThrow().isVerified());
+    }
+
+    @Test
+    void resendWithinTheCooldownKeepsTheLiveLink() throws Exception {
+        String token = register("cooldown@example.com", "cooldownuser");
+
+        userService.resendVerificationEmail("cooldown@example.com");
+        userService.resendVerificationEmail("unknown@example.com");
+
+        lastVerificationToken(1);
+        assertTrue(userService.verifyEmail(token));
+    }
+
+    @Test
+    void verifiedUserGetsNoNewLink() throws Exception {
+        String token = register("verified@example.com", "verifieduser");
+        assertTrue(userService.verifyEmail(token));
+        userRepository.clearExpiredVerificationTokens(Instant.now().plus(2, ChronoUnit.DAYS));
+
+        userService.resendVerificationEmail("verified@example.com");
+
+        lastVerificationToken(1);
+    }
+
+    private String register(String email, String username) throws Exception {
+        userService.createNewUser(new NewUser(email, username, "Password123.", "USER"));
+        return lastVerificationToken(1);
+    }
+
+    // Checks how many verification emails were enqueued so far and returns the token of the last one
+    private String lastVerificationToken(int enqueued) {
+        ArgumentCaptor<VerificationEmailDTO> emails = ArgumentCaptor.forClass(VerificationEmailDTO.class);
+        verify(outboxService, times(enqueued)).enqueueVerificationEmail(emails.capture());
+        return emails.getValue().getToken();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.user_service.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:token-revocation-test",
+        "eureka.client.enabled=false"
+})
+class TokenRevocationServiceTest {
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void revocationSurvivesARebuildBeforeItsCommit() {
+        String jti = UUID.randomUUID().toString();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            tokenRevocationService.revoke(jti, Instant.now().plus(10, ChronoUnit.MINUTES));
+            // Another thread, the rebuild cannot see the uncommitted row
+            CompletableFuture.runAsync(tokenRevocationService::rebuild).join();
+        });
+
+        assertTrue(tokenRevocationService.isRevoked(jti));
+        tokenRevocationService.rebuild();
+        assertTrue(tokenRevocationService.isRevoked(jti));
+    }
+
+    @Test
+    void rolledBackRevocationLeavesTheTokenValid() {
+        String jti = UUID.randomUUID().toString();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            tokenRevocationService.revoke(jti, Instant.now().plus(10, ChronoUnit.MINUTES));
+            status.setRollbackOnly();
+        });
+
+        assertFalse(tokenRevocationService.isRevoked(jti));
+    }
+}
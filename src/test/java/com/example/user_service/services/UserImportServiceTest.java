@@ -0,0 +1,125 @@
+package com.example.user_service.services;
+
+import com.example.user_service.dtos.ImportJobDTO;
+import com.example.user_service.dtos.ImportRowErrorDTO;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-import-test",
+        "eureka.client.enabled=false",
+        "user.import.chunk-size=2"
+})
+class UserImportServiceTest {
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockitoSpyBean(name = "userImportHashingExecutor")
+    private ExecutorService userImportHashingExecutor;
+
+    // The email passes the existing email check and is registered before the chunk is inserted
+    @Test
+    void duplicateRegisteredDuringTheImportFailsOnlyItsRow() throws Exception {
+        doAnswer(invocation -> {
+            userRepository.save(new UserEntity("race@example.com", "Racer", "hash", RoleType.USER));
+            return invocation.callRealMethod();
+        }).doCallRealMethod().when(userImportHashingExecutor).submit(any(Callable.class));
+
+        String rows = """
+                {"email":"race@example.com","username":"Race","password":"Import123.","role":"USER"}
+                {"email":"first@example.com","username":"First","password":"Import123.","role":"USER"}
+                {"email":"second@example.com","username":"Second","password":"Import123.","role":"USER"}
+                {"email":"third@example.com","username":"Third","password":"Import123.","role":"USER"}
+                """;
+        ImportJobDTO job = userImportService.startImport(new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)));
+        job = awaitFinished(job.id());
+
+        assertEquals("COMPLETED", job.status());
+        assertEquals(4, job.processed());
+        assertEquals(3, job.imported());
+        assertEquals(1, job.failed());
+        assertEquals("race@example.com", job.errors().get(0).email());
+        assertEquals("This email is already registered.", job.errors().get(0).message());
+        assertEquals(3, userRepository.findExistingEmails(
+                List.of("first@example.com", "second@example.com", "third@example.com")).size());
+    }
+
+    // Rows that cannot be read are reported with their number, the rest of the file is still imported
+    @Test
+    void nullAndMalformedRowsFailOnlyThemselves() throws Exception {
+        String rows = """
+                {"email":"kept1@example.com","username":"Kept","password":"Import123.","role":"USER"}
+                null
+                {"email":"typed@example.com","username":["Typed"],"password":"Import123.","role":"USER"}
+                {"email":"kept2@example.com","username":"Kept","password":"Import123.","role":"USER"}
+                {"email": oops}
+                {"email":"kept3@example.com","username":"Kept","password":"Import123.","role":"USER"}
+                """;
+        ImportJobDTO job = runImport(rows);
+
+        assertEquals("COMPLETED", job.status());
+        assertEquals(6, job.processed());
+        assertEquals(3, job.imported());
+        assertEquals(3, job.failed());
+        assertEquals(List.of(2L, 3L, 5L), job.errors().stream().map(ImportRowErrorDTO::row).toList());
+        assertEquals("The row is empty.", job.errors().get(0).message());
+        assertNull(job.errors().get(1).email());
+        assertTrue(job.errors().get(1).message().startsWith("The row is not a valid user: "));
+        assertEquals(3, userRepository.findExistingEmails(
+                List.of("kept1@example.com", "kept2@example.com", "kept3@example.com")).size());
+    }
+
+    @Test
+    void nullAndMismatchedElementsOfAnArrayFailOnlyTheirRows() throws Exception {
+        String rows = """
+                [{"email":"array1@example.com","username":"Array","password":"Import123.","role":"USER"},
+                 null,
+                 {"email":"array-typed@example.com","username":{"first":"Array"},"password":"Import123.","role":"USER"},
+                 {"email":"array2@example.com","username":"Array","password":"Import123.","role":"USER"}]
+                """;
+        ImportJobDTO job = runImport(rows);
+
+        assertEquals("COMPLETED", job.status());
+        assertEquals(4, job.processed());
+        assertEquals(2, job.imported());
+        assertEquals(2, job.failed());
+        assertEquals(List.of(2L, 3L), job.errors().stream().map(ImportRowErrorDTO::row).toList());
+    }
+
+    private ImportJobDTO runImport(String rows) throws Exception {
+        ImportJobDTO job = userImportService.startImport(new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)));
+        return awaitFinished(job.id());
+    }
+
+    private ImportJobDTO awaitFinished(String id) throws InterruptedException {
+        for (int i = 0; i < 300; i++) {
+            ImportJobDTO job = userImportService.getJob(id);
+            if (job.finishedAt() != null) {
+                return job;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("The import did not finish");
+    }
+}
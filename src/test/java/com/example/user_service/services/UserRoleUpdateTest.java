@@ -0,0 +1,65 @@
+package com.example.user_service.services;
+
+import com.example.user_service.dtos.UpdateUserRoleOrVerified;
+import com.example.user_service.exceptions.RoleException;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-role-update-test",
+        "eureka.client.enabled=false"
+})
+class UserRoleUpdateTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockitoSpyBean
+    private RefreshTokenService refreshTokenService;
+
+    @Test
+    void emptyUpdateIsRejectedWithoutTouchingTheSessions() {
+        Long id = save("empty@example.com", "emptyuser");
+
+        assertThrows(RoleException.class, () -> userService.updateUserRoleVerifiedById(new UpdateUserRoleOrVerified("", " "), id));
+        assertThrows(RoleException.class, () -> userService.updateUserRoleVerifiedById(new UpdateUserRoleOrVerified(null, null), id));
+
+        verify(refreshTokenService, never()).revokeAllForUser(anyLong());
+        assertEquals(0, userRepository.findById(id).orElseThrow().getVersion());
+    }
+
+    @Test
+    void sessionsEndOnlyWhenTheRoleChangesOrTheUserIsUnverified() throws Exception {
+        Long id = save("sessions@example.com", "sessionsuser");
+
+        userService.updateUserRoleVerifiedById(new UpdateUserRoleOrVerified("USER", "true"), id);
+        verify(refreshTokenService, never()).revokeAllForUser(id);
+
+        userService.updateUserRoleVerifiedById(new UpdateUserRoleOrVerified("ADMIN", ""), id);
+        verify(refreshTokenService).revokeAllForUser(id);
+
+        userService.updateUserRoleVerifiedById(new UpdateUserRoleOrVerified("", "false"), id);
+        verify(refreshTokenService, times(2)).revokeAllForUser(id);
+    }
+
+    private Long save(String email, String username) {
+        UserEntity user = new UserEntity(email, username, "hash", RoleType.USER);
+        user.setVerified(true);
+        return userRepository.save(user).getId();
+    }
+}
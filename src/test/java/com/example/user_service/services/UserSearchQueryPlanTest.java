@@ -0,0 +1,150 @@
+package com.example.user_service.services;
+
+import com.example.user_service.dtos.UserSearchPageDTO;
+import com.example.user_service.models.RoleType;
+import com.example.user_service.models.UserEntity;
+import com.example.user_service.repositories.UserRepository;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the admin search with every filter combination against H2 and checks the plan of each statement it
+// issues: an idx_user_search_* range that already returns the rows in page order, never a scan or a sort.
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.example.user_service.services.UserSearchQueryPlanTest$SqlCapture",
+        "eureka.client.enabled=false"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserSearchQueryPlanTest {
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeAll
+    void insertUsers() {
+        List<UserEntity> users = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            UserEntity user = new UserEntity("Plan" + i + "@example.com", "PlanUser" + i, "hash", i % 4 == 0 ? RoleType.ADMIN : RoleType.USER);
+            user.setVerified(i % 3 == 0);
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+    }
+
+    static Stream<Arguments> filterCombinations() {
+        List<Arguments> combinations = new ArrayList<>();
+        for (RoleType role : new RoleType[]{null, RoleType.ADMIN}) {
+            for (Boolean verified : new Boolean[]{null, false}) {
+                for (String username : new String[]{null, "planu"}) {
+                    for (String email : new String[]{null, "PLAN"}) {
+                        combinations.add(Arguments.of(role, verified, username, email));
+                    }
+                }
+            }
+        }
+        return combinations.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("filterCombinations")
+    void everyPageIsAnIndexRangeInPageOrder(RoleType role, Boolean verified, String username, String email) throws Exception {
+        String expectedIndex = email != null ? "IDX_USER_SEARCH_EMAIL" : username != null ? "IDX_USER_SEARCH_USERNAME" : "IDX_USER_SEARCH_ID";
+
+        SqlCapture.start();
+        UserSearchPageDTO first = userSearchService.search(role, verified, username, email, 3, null);
+        assertNotNull(first.nextCursor(), "the test data fills more than one page");
+        userSearchService.search(role, verified, username, email, 3, first.nextCursor());
+        List<String> statements = SqlCapture.stop();
+
+        assertFalse(statements.isEmpty());
+        for (String sql : statements) {
+            String plan = explain(sql);
+            assertTrue(plan.contains(expectedIndex), () -> "expected " + expectedIndex + " in " + plan);
+            assertTrue(plan.contains("/* index sorted */"), () -> "the rows are sorted after reading them: " + plan);
+            assertFalse(plan.contains("tableScan"), () -> "table scan: " + plan);
+        }
+    }
+
+    // Walking every page returns each matching user once, across all the role and verification groups
+    @ParameterizedTest
+    @MethodSource("filterCombinations")
+    void pagesReturnEveryMatchOnce(RoleType role, Boolean verified, String username, String email) throws Exception {
+        List<Long> expected = userRepository.findAll().stream()
+                .filter(user -> role == null || user.getRole() == role)
+                .filter(user -> verified == null || user.isVerified() == verified)
+                .filter(user -> username == null || user.getUsername().toLowerCase().startsWith(username.toLowerCase()))
+                .filter(user -> email == null || user.getEmail().toLowerCase().startsWith(email.toLowerCase()))
+                .map(UserEntity::getId)
+                .sorted()
+                .toList();
+
+        List<Long> found = new ArrayList<>();
+        String cursor = null;
+        do {
+            UserSearchPageDTO page = userSearchService.search(role, verified, username, email, 3, cursor);
+            page.users().forEach(user -> found.add(user.getId()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(expected, found.stream().sorted().toList());
+    }
+
+    private String explain(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+                statement.setObject(i, null);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getString(1);
+            }
+        }
+    }
+
+    // Records the statements of the test thread only, the scheduled jobs keep querying in the background
+    public static class SqlCapture implements StatementInspector {
+
+        private static final ThreadLocal<List<String>> STATEMENTS = new ThreadLocal<>();
+
+        static void start() {
+            STATEMENTS.set(new ArrayList<>());
+        }
+
+        static List<String> stop() {
+            List<String> statements = STATEMENTS.get();
+            STATEMENTS.remove();
+            return statements;
+        }
+
+        @Override
+        public String inspect(String sql) {
+            List<String> statements = STATEMENTS.get();
+            if (statements != null) {
+                statements.add(sql);
+            }
+            return sql;
+        }
+    }
+}